@@ -0,0 +1,146 @@
+package benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A small benchmark harness: runs an operation for a warmup and a measurement
+ * period and reports throughput, latency percentiles, allocation rate and
+ * garbage collections (the numbers the gc profiler of JMH would give).
+ */
+public class Bench {
+
+	/** The code being measured. */
+	public interface Operation {
+		void run() throws Exception;
+	}
+
+	/** Maximum number of latency samples kept per measurement */
+	private static final int MAX_SAMPLES = 1 << 24;
+
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	private final double warmupSeconds;
+	private final double measureSeconds;
+
+	public Bench(double warmupSeconds, double measureSeconds) {
+		this.warmupSeconds = warmupSeconds;
+		this.measureSeconds = measureSeconds;
+	}
+
+	/**
+	 * Measures an operation. Every call of the operation is one sample; it is
+	 * called at least once during warmup and once during measurement.
+	 */
+	public Result measure(String name, String parameters, Operation operation) throws Exception {
+		// Warmup
+		long end = System.nanoTime() + (long) (this.warmupSeconds * 1e9);
+		do {
+			operation.run();
+		} while (System.nanoTime() < end);
+
+		long[] samples = new long[1024];
+		int count = 0;
+		List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+		long gcCount = -gcCount(collectors);
+		long gcTime = -gcTime(collectors);
+		long thread = Thread.currentThread().getId();
+		long allocated = -THREADS.getThreadAllocatedBytes(thread);
+
+		long begin = System.nanoTime();
+		end = begin + (long) (this.measureSeconds * 1e9);
+		long now = begin;
+		do {
+			operation.run();
+			long after = System.nanoTime();
+			if (count < MAX_SAMPLES) {
+				if (count == samples.length) {
+					samples = Arrays.copyOf(samples, count * 2);
+					// Not allocated by the operation
+					allocated -= 16 + 8L * samples.length;
+				}
+				samples[count++] = after - now;
+			}
+			now = after;
+		} while (now < end);
+		long elapsed = now - begin;
+
+		allocated += THREADS.getThreadAllocatedBytes(thread);
+		gcCount += gcCount(collectors);
+		gcTime += gcTime(collectors);
+
+		Arrays.sort(samples, 0, count);
+		Result result = new Result();
+		result.name = name;
+		result.parameters = parameters;
+		result.operations = count;
+		result.throughput = count / (elapsed / 1e9);
+		result.p50 = percentile(samples, count, 0.50);
+		result.p90 = percentile(samples, count, 0.90);
+		result.p99 = percentile(samples, count, 0.99);
+		result.p999 = percentile(samples, count, 0.999);
+		result.max = samples[count - 1];
+		result.bytesPerOperation = (double) allocated / count;
+		result.allocationRate = allocated / (elapsed / 1e9) / (1024 * 1024);
+		result.gcCount = gcCount;
+		result.gcMillis = gcTime;
+		return result;
+	}
+
+	private static long percentile(long[] sorted, int count, double p) {
+		return sorted[Math.min(count - 1, (int) Math.ceil(p * count) - 1)];
+	}
+
+	private static long gcCount(List<GarbageCollectorMXBean> collectors) {
+		long sum = 0;
+		for (GarbageCollectorMXBean collector : collectors)
+			sum += Math.max(0, collector.getCollectionCount());
+		return sum;
+	}
+
+	private static long gcTime(List<GarbageCollectorMXBean> collectors) {
+		long sum = 0;
+		for (GarbageCollectorMXBean collector : collectors)
+			sum += Math.max(0, collector.getCollectionTime());
+		return sum;
+	}
+
+	/** Outcome of one measurement. Times are in nanoseconds. */
+	public static class Result {
+
+		public static final String HEADER = String.format("%-12s %-32s %12s %12s %12s %12s %12s %12s %12s %10s %6s %8s",
+				"benchmark", "parameters", "ops/s", "p50", "p90", "p99", "p99.9", "max", "B/op", "MB/s", "gc", "gc ms");
+		public static final String CSV_HEADER = "label,benchmark,parameters,operations,ops_per_s,p50_ns,p90_ns,p99_ns,p999_ns,max_ns,bytes_per_op,alloc_mb_per_s,gc_count,gc_ms";
+
+		public String name;
+		public String parameters;
+		public int operations;
+		public double throughput;
+		public long p50;
+		public long p90;
+		public long p99;
+		public long p999;
+		public long max;
+		public double bytesPerOperation;
+		public double allocationRate;
+		public long gcCount;
+		public long gcMillis;
+
+		@Override
+		public String toString() {
+			return String.format("%-12s %-32s %12.1f %12d %12d %12d %12d %12d %12.0f %10.1f %6d %8d",
+					this.name, this.parameters, this.throughput, this.p50, this.p90, this.p99, this.p999, this.max,
+					this.bytesPerOperation, this.allocationRate, this.gcCount, this.gcMillis);
+		}
+
+		public String toCsv(String label) {
+			return String.format(Locale.ROOT, "%s,%s,\"%s\",%d,%.3f,%d,%d,%d,%d,%d,%.1f,%.3f,%d,%d",
+					label, this.name, this.parameters, this.operations, this.throughput, this.p50, this.p90, this.p99,
+					this.p999, this.max, this.bytesPerOperation, this.allocationRate, this.gcCount, this.gcMillis);
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+import model.Planner;
+import model.World;
+
+/**
+ * Measures the heap used by a world (map, trackers and their search state)
+ * after a number of turns.
+ *
+ * Usage: Footprint [size] [trackers] [turns] [planner]
+ */
+public class Footprint {
+
+	public static void main(String[] args) throws Exception {
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+		int trackers = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+		int turns = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+		Planner planner = args.length > 3 ? Planner.valueOf(args[3]) : Planner.A_STAR;
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+		Maps maps = new Maps(size, size, 20, 42);
+		String text = maps.toString();
+		maps = null;
+		long before = used(memory);
+
+		World world = new World(size, size, text, size / 2 + (size / 2) * size, size - 2 + (size - 2) * size, trackers);
+		text = null;
+		world.setHeadless(true);
+		world.setPlanner(planner);
+		world.setMaxTrackers(trackers);
+		for (int i = 0; i < turns; i++)
+			world.movePlayer(i % 2 == 0 ? 4 : 3);
+		long after = used(memory);
+
+		System.out.printf("%dx%d map, %d trackers, %s, %d turns: %.1f MB (%.2f MB per tracker)%n",
+				size, size, world.getTrackerCount(), planner, turns, (after - before) / 1048576.0,
+				(after - before) / 1048576.0 / Math.max(1, world.getTrackerCount()));
+	}
+
+	private static long used(MemoryMXBean memory) {
+		for (int i = 0; i < 3; i++)
+			System.gc();
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+}
@@ -0,0 +1,98 @@
+package benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+import model.ClusterGraph;
+import model.HierarchicalPlanner;
+import model.Landmarks;
+import model.PathFinder;
+import model.Terrain;
+
+/**
+ * Compares the heuristics guiding the searches: the Manhattan distance and
+ * landmark tables (ALT) with different numbers of landmarks. Reports the tiles
+ * (nodes) expanded and the time per search of the A* path finder and of the
+ * hierarchical planner between random pairs of tiles, on a map with random
+ * walls and on a maze, as well as the time to compute the tables and to load
+ * them again.
+ *
+ * Usage: Heuristics [size] [pairs] [landmarks,...]
+ */
+public class Heuristics {
+
+	public static void main(String[] args) throws Exception {
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 512;
+		int pairs = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		String[] counts = (args.length > 2 ? args[2] : "4,8,16").split(",");
+
+		for (String kind : new String[] { "random", "maze" }) {
+			Maps maps = kind.equals("maze") ? Maps.maze(size, size, 42) : new Maps(size, size, 20, 42);
+			Terrain terrain = maps.toTerrain();
+			int[] from = new int[pairs];
+			int[] to = new int[pairs];
+			SplittableRandom random = new SplittableRandom(7);
+			for (int i = 0; i < pairs; i++) {
+				from[i] = walkable(terrain, random);
+				to[i] = walkable(terrain, random);
+			}
+			ClusterGraph graph = new ClusterGraph(terrain);
+
+			System.out.printf("%s %dx%d, %d searches%n", kind, size, size, pairs);
+			System.out.printf("%-10s %10s %10s %12s %12s %10s %10s%n", "heuristic", "compute ms", "load ms", "A* expanded", "A* us", "HPA exp.", "HPA us");
+			report("manhattan", null, 0, 0, terrain, graph, from, to);
+			for (String count : counts) {
+				Path map = Files.createTempFile("labyrinth", ".map");
+				Path file = Landmarks.fileFor(map);
+				try {
+					long start = System.nanoTime();
+					Landmarks.forMap(map, terrain, Integer.parseInt(count));
+					long computed = System.nanoTime() - start;
+					start = System.nanoTime();
+					Landmarks landmarks = Landmarks.forMap(map, terrain, Integer.parseInt(count));
+					long loaded = System.nanoTime() - start;
+					report("ALT-" + count, landmarks, computed, loaded, terrain, graph, from, to);
+				} finally {
+					Files.deleteIfExists(file);
+					Files.deleteIfExists(map);
+				}
+			}
+			System.out.println();
+		}
+	}
+
+	private static void report(String name, Landmarks landmarks, long computed, long loaded, Terrain terrain, ClusterGraph graph, int[] from, int[] to) {
+		PathFinder pathFinder = new PathFinder(terrain);
+		pathFinder.setLandmarks(landmarks);
+		HierarchicalPlanner planner = new HierarchicalPlanner(graph);
+		planner.setLandmarks(landmarks);
+
+		long expanded = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < from.length; i++) {
+			pathFinder.start(from[i], to[i]);
+			while (pathFinder.step())
+				;
+			expanded += pathFinder.getExpanded();
+		}
+		long time = System.nanoTime() - start;
+
+		long hierarchicalExpanded = 0;
+		start = System.nanoTime();
+		for (int i = 0; i < from.length; i++)
+			hierarchicalExpanded += planner.plan(from[i], to[i], Integer.MAX_VALUE);
+		long hierarchicalTime = System.nanoTime() - start;
+
+		System.out.printf("%-10s %10.1f %10.1f %12d %12.1f %10d %10.1f%n", name, computed / 1e6, loaded / 1e6,
+				expanded / from.length, time / 1e3 / from.length, hierarchicalExpanded / from.length, hierarchicalTime / 1e3 / from.length);
+	}
+
+	private static int walkable(Terrain terrain, SplittableRandom random) {
+		while (true) {
+			int tile = random.nextInt(terrain.getSize());
+			if (terrain.isWalkable(tile))
+				return tile;
+		}
+	}
+}
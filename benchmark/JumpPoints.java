@@ -0,0 +1,85 @@
+package benchmark;
+
+import java.util.SplittableRandom;
+
+import model.BitGrid;
+import model.JumpPointPlanner;
+import model.PathFinder;
+import model.Terrain;
+
+/**
+ * Compares Jump Point Search with the trackers' A* between random pairs of
+ * tiles: tiles expanded, tiles looked at while jumping and the time per
+ * search, on an open room (no walls inside), a map with random walls and a
+ * maze of corridors.
+ *
+ * Usage: JumpPoints [size] [pairs] [rounds]
+ */
+public class JumpPoints {
+
+	public static void main(String[] args) throws Exception {
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 512;
+		int pairs = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+		System.out.printf("%dx%d, %d searches, best of %d rounds%n", size, size, pairs, rounds);
+		System.out.printf("%-8s %-10s %10s %10s %10s %10s%n", "map", "planner", "expanded", "scanned", "length", "us");
+		for (String kind : new String[] { "open", "random", "maze" }) {
+			Maps maps = kind.equals("maze") ? Maps.maze(size, size, 42) : new Maps(size, size, kind.equals("open") ? 0 : 20, 42);
+			Terrain terrain = maps.toTerrain();
+			int[] from = new int[pairs];
+			int[] to = new int[pairs];
+			SplittableRandom random = new SplittableRandom(7);
+			for (int i = 0; i < pairs; i++) {
+				from[i] = walkable(terrain, random);
+				to[i] = walkable(terrain, random);
+			}
+
+			PathFinder pathFinder = new PathFinder(terrain);
+			long expanded = 0;
+			long length = 0;
+			long best = Long.MAX_VALUE;
+			for (int round = 0; round < rounds; round++) {
+				expanded = 0;
+				length = 0;
+				long start = System.nanoTime();
+				for (int i = 0; i < pairs; i++) {
+					pathFinder.start(from[i], to[i]);
+					while (pathFinder.step())
+						;
+					expanded += pathFinder.getExpanded();
+					for (int tile = to[i]; pathFinder.getDestinationReached() && tile != from[i]; tile = pathFinder.getPredecessor(tile))
+						length++;
+				}
+				best = Math.min(best, System.nanoTime() - start);
+			}
+			System.out.printf("%-8s %-10s %10d %10s %10d %10.1f%n", kind, "A*", expanded / pairs, "-", length / pairs, best / 1e3 / pairs);
+
+			JumpPointPlanner planner = new JumpPointPlanner(new BitGrid(terrain));
+			long scanned = 0;
+			best = Long.MAX_VALUE;
+			for (int round = 0; round < rounds; round++) {
+				expanded = 0;
+				scanned = 0;
+				length = 0;
+				long start = System.nanoTime();
+				for (int i = 0; i < pairs; i++) {
+					expanded += planner.plan(from[i], to[i], Integer.MAX_VALUE);
+					scanned += planner.getScanned();
+					for (int tile = from[i], next; planner.getDestinationReached() && (next = planner.nextStep(tile)) != tile; tile = next)
+						length++;
+				}
+				best = Math.min(best, System.nanoTime() - start);
+			}
+			System.out.printf("%-8s %-10s %10d %10d %10d %10.1f%n", kind, "JPS", expanded / pairs, scanned / pairs, length / pairs, best / 1e3 / pairs);
+		}
+	}
+
+	private static int walkable(Terrain terrain, SplittableRandom random) {
+		while (true) {
+			int tile = random.nextInt(terrain.getSize());
+			if (terrain.isWalkable(tile))
+				return tile;
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package benchmark;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+import model.MazeGenerator;
+import model.Terrain;
+
+/**
+ * Generates maps for the benchmarks: walls around the border and randomly
+ * placed walls inside, or a maze of corridors ({@link #maze(int, int, long)},
+ * {@link #generated(int, int, int, long)}).
+ * The player starts in the middle, the trackers start near the bottom left
+ * corner (where World places them), so searches have to cross the map.
+ */
+public class Maps {
+
+	private final int width;
+	private final int height;
+	private final int[] cells;
+
+	/**
+	 * @param width width of the map (at least 25, the trackers start in row 23).
+	 * @param height height of the map (at least 25).
+	 * @param wallDensity percentage of inner tiles which are walls.
+	 * @param seed seed of the random walls.
+	 */
+	public Maps(int width, int height, int wallDensity, long seed) {
+		this.width = width;
+		this.height = height;
+		this.cells = new int[width * height];
+		SplittableRandom random = new SplittableRandom(seed);
+		for (int y = 0; y < height; y++)
+			for (int x = 0; x < width; x++) {
+				boolean border = x == 0 || y == 0 || x == width - 1 || y == height - 1;
+				this.cells[x + y * width] = border || random.nextInt(100) < wallDensity ? 0 : 1;
+			}
+		// Keep the start, the destination and the trackers' starting row free
+		clear(getStart());
+		clear(getDestination());
+		for (int x = 1; x < width - 1; x++)
+			this.cells[x + 23 * width] = 1;
+	}
+
+	private Maps(int width, int height, int[] cells) {
+		this.width = width;
+		this.height = height;
+		this.cells = cells;
+	}
+
+	/**
+	 * A maze: corridors one tile wide between walls one tile thick, with a few
+	 * walls knocked out so there is more than one way between most tiles. The
+	 * worst case for heuristics which ignore the walls.
+	 */
+	public static Maps maze(int width, int height, long seed) {
+		int[] cells = new int[width * height];
+		SplittableRandom random = new SplittableRandom(seed);
+		// Depth-first search over the tiles with odd coordinates, opening the wall between two of them
+		int[] stack = new int[cells.length];
+		int top = 0;
+		cells[1 + width] = 1;
+		stack[top++] = 1 + width;
+		int[] dx = { 2, -2, 0, 0 };
+		int[] dy = { 0, 0, 2, -2 };
+		while (top > 0) {
+			int tile = stack[top - 1];
+			int x = tile % width;
+			int y = tile / width;
+			int start = random.nextInt(4);
+			int next = -1;
+			for (int i = 0; i < 4 && next < 0; i++) {
+				int nx = x + dx[(start + i) % 4];
+				int ny = y + dy[(start + i) % 4];
+				if (nx > 0 && ny > 0 && nx < width - 1 && ny < height - 1 && cells[nx + ny * width] == 0)
+					next = nx + ny * width;
+			}
+			if (next < 0) {
+				top--;
+				continue;
+			}
+			cells[(tile + next) / 2] = 1;
+			cells[next] = 1;
+			stack[top++] = next;
+		}
+		for (int i = 0; i < cells.length / 100; i++) {
+			int x = 1 + random.nextInt(width - 2);
+			int y = 1 + random.nextInt(height - 2);
+			cells[x + y * width] = 1;
+		}
+		Maps maps = new Maps(width, height, cells);
+		maps.clear(maps.getStart());
+		maps.clear(maps.getDestination());
+		return maps;
+	}
+
+	/**
+	 * A labyrinth from the {@link MazeGenerator}: corridors one tile wide,
+	 * a perfect maze apart from the loops knocked into it.
+	 *
+	 * @param loops percentage of the remaining walls between cells which are knocked out.
+	 */
+	public static Maps generated(int width, int height, int loops, long seed) {
+		MazeGenerator generator = new MazeGenerator(width, height, seed);
+		generator.setLoops(loops);
+		Terrain terrain = generator.generate();
+		int[] cells = new int[width * height];
+		for (int i = 0; i < cells.length; i++)
+			cells[i] = terrain.getType(i);
+		Maps maps = new Maps(width, height, cells);
+		maps.clear(maps.getStart());
+		maps.clear(maps.getDestination());
+		return maps;
+	}
+
+	public int getWidth() { return this.width; }
+	public int getHeight() { return this.height; }
+	public int getStart() { return this.width / 2 + (this.height / 2) * this.width; }
+	public int getDestination() { return this.width - 2 + (this.height - 2) * this.width; }
+
+	/** Writes the map in the text format understood by the MapLoader */
+	public void write(Path file) throws IOException {
+		try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+			writer.write(this.width + " " + this.height + "\n");
+			for (int y = 0; y < this.height; y++) {
+				for (int x = 0; x < this.width; x++) {
+					writer.write('0' + this.cells[x + y * this.width]);
+					writer.write(',');
+				}
+				writer.write('\n');
+			}
+		}
+	}
+
+	public Terrain toTerrain() {
+		byte[] types = new byte[this.cells.length];
+		for (int i = 0; i < types.length; i++)
+			types[i] = (byte) this.cells[i];
+		return new Terrain(this.width, this.height, types);
+	}
+
+	/** The map in the format expected by the World constructor */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder(this.cells.length * 2);
+		for (int i = 0; i < this.cells.length; i++) {
+			if (i > 0)
+				builder.append(',');
+			builder.append(this.cells[i]);
+		}
+		return builder.toString();
+	}
+
+	/** Free a tile and its neighbours */
+	private void clear(int tile) {
+		int x = tile % this.width;
+		int y = tile / this.width;
+		for (int dy = -1; dy <= 1; dy++)
+			for (int dx = -1; dx <= 1; dx++)
+				if (x + dx > 0 && x + dx < this.width - 1 && y + dy > 0 && y + dy < this.height - 1)
+					this.cells[x + dx + (y + dy) * this.width] = 1;
+	}
+}
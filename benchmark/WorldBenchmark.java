@@ -0,0 +1,261 @@
+package benchmark;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.FileWriter;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import model.MapLoader;
+import model.PathCache;
+import model.WorldMetrics;
+import model.Planner;
+import model.SearchScheduler;
+import model.World;
+import view.ConsoleView;
+import view.GraphicView;
+
+/**
+ * Benchmarks the turn loop, the pathfinding, map parsing and loading and the views for a
+ * grid of map sizes, tracker counts and wall densities. Results are printed as
+ * a table and can be appended to a CSV file to compare revisions.
+ *
+ * Usage: WorldBenchmark [--sizes 25,256,1024,4096] [--trackers 1,3]
+ * [--density 0,20] [--planner A_STAR] [--warmup seconds] [--time seconds]
+ * [--benchmarks construct,loadText,loadBinary,movePlayer,search,trackPath,reset,paint,paintTurn,console]
+ * [--csv file] [--label revision] [--budget MB] [--parallel true|false]
+ * [--cache entries] [--metrics true|false] [--search-budget microseconds]
+ * [--maps random|maze]
+ *
+ * The textures for the paint benchmark are loaded from the classpath (add
+ * ./assets/assets_2.jar), run with -Djava.awt.headless=true on machines
+ * without a display. Large maps need a large heap (-Xmx). With --budget the
+ * worlds read their map through a {@link model.ChunkedTerrain} which keeps at
+ * most the given number of megabytes of the map in memory. --parallel decides
+ * whether trackers plan in parallel (by default they do on several cores);
+ * the common fork-join pool they use is sized with
+ * -Djava.util.concurrent.ForkJoinPool.common.parallelism=n. With --cache the
+ * worlds get a {@link model.PathCache} of that many entries, whose hit rates
+ * are printed after the movePlayer benchmark. With --metrics the worlds are
+ * measured by {@link model.WorldMetrics}, to see what measuring costs.
+ * --search-budget gives the A* searches of a turn that much time through a
+ * {@link model.SearchScheduler}; how much of it they used and how many
+ * searches were carried over is printed after the movePlayer benchmark.
+ * --maps maze plays on labyrinths from the {@link model.MazeGenerator}
+ * instead of random walls; the densities are then the percentages of loops.
+ */
+public class WorldBenchmark {
+
+	/** Size of a field in the graphical view */
+	private static final Dimension FIELD = new Dimension(50, 50);
+
+	public static void main(String[] args) throws Exception {
+		int[] sizes = { 25, 256, 1024, 4096 };
+		int[] trackerCounts = { 1, 3 };
+		int[] densities = { 0, 20 };
+		Planner planner = Planner.A_STAR;
+		List<String> benchmarks = Arrays.asList("construct", "loadText", "loadBinary", "movePlayer", "search", "trackPath", "reset", "paint", "paintTurn", "console");
+		double warmup = 1;
+		double time = 3;
+		String csv = null;
+		String label = "current";
+		long budget = 0;
+		Boolean parallel = null;
+		int cache = 0;
+		boolean metrics = false;
+		long searchBudget = 0;
+		boolean maze = false;
+
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+				case "--sizes": sizes = parse(args[i+1]); break;
+				case "--trackers": trackerCounts = parse(args[i+1]); break;
+				case "--density": densities = parse(args[i+1]); break;
+				case "--planner": planner = Planner.valueOf(args[i+1]); break;
+				case "--benchmarks": benchmarks = Arrays.asList(args[i+1].split(",")); break;
+				case "--warmup": warmup = Double.parseDouble(args[i+1]); break;
+				case "--time": time = Double.parseDouble(args[i+1]); break;
+				case "--csv": csv = args[i+1]; break;
+				case "--label": label = args[i+1]; break;
+				case "--budget": budget = Long.parseLong(args[i+1]) << 20; break;
+				case "--parallel": parallel = Boolean.parseBoolean(args[i+1]); break;
+				case "--cache": cache = Integer.parseInt(args[i+1]); break;
+				case "--metrics": metrics = Boolean.parseBoolean(args[i+1]); break;
+				case "--search-budget": searchBudget = Long.parseLong(args[i+1]) * 1000; break;
+				case "--maps": maze = args[i+1].equals("maze"); break;
+				default: throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+
+		Bench bench = new Bench(warmup, time);
+		List<Bench.Result> results = new ArrayList<>();
+		System.out.println(Bench.Result.HEADER);
+		for (int size : sizes)
+			for (int density : densities)
+				for (int trackers : trackerCounts) {
+					String parameters = "size=" + size + " trackers=" + trackers + (maze ? " loops=" : " walls=") + density + "%"
+							+ (budget > 0 ? " budget=" + (budget >> 20) + "MB" : "")
+							+ (parallel == null ? "" : parallel ? " parallel" : " sequential")
+							+ (cache > 0 ? " cache=" + cache : "")
+							+ (metrics ? " metrics" : "")
+							+ (searchBudget > 0 ? " search-budget=" + searchBudget / 1000 + "us" : "");
+					Maps maps = maze ? Maps.generated(size, size, density, 42) : new Maps(size, size, density, 42);
+					for (String benchmark : benchmarks) {
+						Bench.Result result = run(bench, benchmark, parameters, maps, trackers, planner, budget, parallel, cache, metrics, searchBudget);
+						System.out.println(result);
+						results.add(result);
+					}
+				}
+
+		if (csv != null) {
+			boolean exists = new java.io.File(csv).exists();
+			try (PrintWriter writer = new PrintWriter(new FileWriter(csv, true))) {
+				if (!exists)
+					writer.println(Bench.Result.CSV_HEADER);
+				for (Bench.Result result : results)
+					writer.println(result.toCsv(label));
+			}
+		}
+	}
+
+	private static Bench.Result run(Bench bench, String benchmark, String parameters, Maps maps, int trackers, Planner planner, long budget, Boolean parallel, int cache, boolean metrics, long searchBudget) throws Exception {
+		String text = maps.toString();
+		Path chunked = null;
+		if (budget > 0) {
+			chunked = Files.createTempFile("labyrinth", ".map");
+			chunked.toFile().deleteOnExit();
+			MapLoader.save(maps.toTerrain(), chunked);
+		}
+		Path map = chunked;
+		World world = createWorld(maps, text, map, budget, trackers, planner);
+		if (parallel != null)
+			world.setParallel(parallel);
+		if (cache > 0)
+			world.setPathCache(new PathCache(world.getTerrain(), cache));
+		if (metrics)
+			world.setMetrics(new WorldMetrics());
+		if (searchBudget > 0)
+			world.setSearchScheduler(new SearchScheduler(searchBudget));
+
+		switch (benchmark) {
+			case "construct":
+				return bench.measure(benchmark, parameters, () -> createWorld(maps, text, map, budget, trackers, planner));
+
+			case "loadText":
+			case "loadBinary":
+				Path file = Files.createTempFile("labyrinth", ".map");
+				file.toFile().deleteOnExit();
+				if (benchmark.equals("loadText"))
+					maps.write(file);
+				else
+					MapLoader.save(maps.toTerrain(), file);
+				return bench.measure(benchmark, parameters, () -> MapLoader.load(file));
+
+			case "movePlayer":
+				int[] turn = { 0 };
+				Bench.Result moves = bench.measure(benchmark, parameters, () -> {
+					if (!world.getRunning())
+						world.restart();
+					world.movePlayer(turn[0]++ % 2 == 0 ? 4 : 3);
+				});
+				if (world.getPathCache() != null)
+					System.out.println("# path cache: " + world.getPathCache());
+				if (world.getSearchScheduler() != null)
+					System.out.println("# search scheduler: " + world.getSearchScheduler());
+				return moves;
+
+			case "search":
+				return bench.measure(benchmark, parameters, world::search);
+
+			case "trackPath":
+				// Every call walks the same path from the same positions
+				world.search();
+				int[] positions = new int[2 * world.getTrackerCount()];
+				for (int i = 0; i < world.getTrackerCount(); i++) {
+					positions[2 * i] = world.getTracker(i).getX();
+					positions[2 * i + 1] = world.getTracker(i).getY();
+				}
+				return bench.measure(benchmark, parameters, () -> {
+					for (int i = 0; i < world.getTrackerCount(); i++)
+						world.getTracker(i).setLocation(positions[2 * i], positions[2 * i + 1]);
+					world.trackPath();
+				});
+
+			case "reset":
+				world.search();
+				return bench.measure(benchmark, parameters, () -> {
+					for (int i = 0; i < world.getTrackerCount(); i++)
+						world.getTracker(i).reset();
+				});
+
+			case "paint":
+				GraphicView graphicView = new GraphicView(maps.getWidth(), maps.getHeight(), FIELD, world.getTerrain(), maps.getDestination(), trackers);
+				graphicView.update(world);
+				BufferedImage canvas = new BufferedImage(25 * FIELD.width, 25 * FIELD.height + 50, BufferedImage.TYPE_INT_RGB);
+				return bench.measure(benchmark, parameters, () -> {
+					Graphics2D g = canvas.createGraphics();
+					graphicView.paint(g);
+					g.dispose();
+				});
+
+			case "paintTurn":
+				// A turn as the GUI sees it: move, then paint only the region the view asks for
+				GraphicView turnView = new GraphicView(maps.getWidth(), maps.getHeight(), FIELD, world.getTerrain(), maps.getDestination(), trackers);
+				turnView.update(world);
+				BufferedImage frame = new BufferedImage(25 * FIELD.width, 25 * FIELD.height + 50, BufferedImage.TYPE_INT_RGB);
+				int[] move = { 0 };
+				return bench.measure(benchmark, parameters, () -> {
+					if (!world.getRunning())
+						world.restart();
+					world.movePlayer(move[0]++ % 2 == 0 ? 4 : 3);
+					turnView.update(world);
+					Rectangle dirty = turnView.getDirtyRegion();
+					Graphics2D g = frame.createGraphics();
+					g.translate(-dirty.x, -dirty.y);
+					g.setClip(dirty);
+					turnView.paint(g);
+					g.dispose();
+				});
+
+			case "console":
+				// A turn as the console sees it: move, then print what changed
+				ConsoleView consoleView = new ConsoleView(Channels.newChannel(OutputStream.nullOutputStream()));
+				consoleView.update(world);
+				int[] step = { 0 };
+				return bench.measure(benchmark, parameters, () -> {
+					if (!world.getRunning())
+						world.restart();
+					world.movePlayer(step[0]++ % 2 == 0 ? 4 : 3);
+					consoleView.update(world);
+				});
+
+			default:
+				throw new IllegalArgumentException("Unknown benchmark " + benchmark);
+		}
+	}
+
+	/**
+	 * @param chunked binary map file to open as a chunked terrain, null to parse the text.
+	 */
+	private static World createWorld(Maps maps, String text, Path chunked, long budget, int trackers, Planner planner) throws Exception {
+		World world = chunked == null
+				? new World(maps.getWidth(), maps.getHeight(), text, maps.getStart(), maps.getDestination(), trackers)
+				: new World(MapLoader.open(chunked, budget), maps.getStart(), maps.getDestination(), trackers);
+		world.setHeadless(true);
+		world.setPlanner(planner);
+		world.setMaxTrackers(trackers);
+		return world;
+	}
+
+	private static int[] parse(String list) {
+		return Arrays.stream(list.split(",")).mapToInt(Integer::parseInt).toArray();
+	}
+}
@@ -0,0 +1,213 @@
+package controller;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import model.InputRecorder;
+import model.Landmarks;
+import model.MapLoader;
+import model.PathCache;
+import model.Planner;
+import model.Terrain;
+import model.World;
+import model.WorldMetrics;
+
+/**
+ * Plays many headless games in parallel and prints how they ended. Used to
+ * tune the difficulty without playing through the GUI.
+ *
+ * Usage: BatchRunner [--map file] [--start tile] [--destination tile]
+ * [--difficulty n] [--planner A_STAR|DISTANCE_FIELD|INCREMENTAL|HIERARCHICAL|JUMP_POINT]
+ * [--games n] [--turns n] [--seed n] [--input random|UDLR...] [--threads n]
+ * [--landmarks n] [--cache entries] [--metrics true] [--record file]
+ *
+ * With --landmarks the searches use landmark tables, which are saved next to
+ * the map file the first time. With --cache every game gets a path cache of
+ * that many entries. With --metrics the games are measured together, the
+ * numbers are shown through JMX while the games run and printed at the end.
+ * With --record the first game is written into an input log for
+ * {@link Replay}.
+ */
+public class BatchRunner {
+
+	/** Games played by one task before it stops splitting */
+	private static final int GAMES_PER_TASK = 16;
+
+	private String mapFile = "assets/Tilemap3.txt";
+	private Terrain terrain;
+	private int start = 55;
+	private int destination = 91;
+	private int difficulty = 1;
+	private Planner planner = Planner.A_STAR;
+	/** Landmark tables shared by all games, null for Manhattan distances */
+	private Landmarks landmarks;
+	/** Entries of each game's path cache, 0 for none */
+	private int cache;
+	/** Shared by all games, null if they are not measured */
+	private WorldMetrics metrics;
+	private int games = 10_000;
+	private int turns = 500;
+	private long seed = 1;
+	/** Scripted moves (U, D, L, R), repeated until the game ends; null for random moves */
+	private String script;
+	/** Input log of the first game, null for none */
+	private Path record;
+
+	public static void main(String[] args) throws Exception {
+		BatchRunner runner = new BatchRunner();
+		int threads = Runtime.getRuntime().availableProcessors();
+		int landmarks = 0;
+
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+				case "--map": runner.mapFile = args[i+1]; break;
+				case "--start": runner.start = Integer.parseInt(args[i+1]); break;
+				case "--destination": runner.destination = Integer.parseInt(args[i+1]); break;
+				case "--difficulty": runner.difficulty = Integer.parseInt(args[i+1]); break;
+				case "--planner": runner.planner = Planner.valueOf(args[i+1]); break;
+				case "--games": runner.games = Integer.parseInt(args[i+1]); break;
+				case "--turns": runner.turns = Integer.parseInt(args[i+1]); break;
+				case "--seed": runner.seed = Long.parseLong(args[i+1]); break;
+				case "--input": runner.script = args[i+1].equals("random") ? null : args[i+1].toUpperCase(); break;
+				case "--threads": threads = Integer.parseInt(args[i+1]); break;
+				case "--landmarks": landmarks = Integer.parseInt(args[i+1]); break;
+				case "--cache": runner.cache = Integer.parseInt(args[i+1]); break;
+				case "--metrics": runner.metrics = Boolean.parseBoolean(args[i+1]) ? new WorldMetrics() : null; break;
+				case "--record": runner.record = Paths.get(args[i+1]); break;
+				default: throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		runner.terrain = MapLoader.load(Paths.get(runner.mapFile));
+		if (landmarks > 0)
+			runner.landmarks = Landmarks.forMap(Paths.get(runner.mapFile), runner.terrain, landmarks);
+
+		if (runner.metrics != null)
+			runner.metrics.register("batch");
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		long begin = System.nanoTime();
+		Result result = pool.invoke(runner.new Games(0, runner.games));
+		double seconds = (System.nanoTime() - begin) / 1e9;
+		pool.shutdown();
+
+		System.out.printf("%d games on %d threads in %.2f s (%.0f games/s)%n", result.games, threads, seconds, result.games / seconds);
+		System.out.printf("won:     %6.2f %% (%d)%n", 100.0 * result.won / result.games, result.won);
+		System.out.printf("caught:  %6.2f %% (%d)%n", 100.0 * result.caught / result.games, result.caught);
+		System.out.printf("timeout: %6.2f %% (%d)%n", 100.0 * result.timeout / result.games, result.timeout);
+		System.out.printf("turns per game: %.1f average, %d max%n", (double) result.turns / result.games, result.maxTurns);
+		if (runner.metrics != null)
+			System.out.println(runner.metrics);
+	}
+
+	/**
+	 * Plays one game.
+	 *
+	 * @param game number of the game, together with the seed it determines the random moves.
+	 */
+	private void play(int game, Result result) {
+		World world = new World(this.terrain, this.start, this.destination, this.difficulty);
+		world.setHeadless(true);
+		// The games already run in parallel
+		world.setParallel(false);
+		world.setPlanner(this.planner);
+		world.setLandmarks(this.landmarks);
+		world.setMetrics(this.metrics);
+		if (this.cache > 0)
+			world.setPathCache(new PathCache(this.terrain, this.cache));
+		long seed = this.seed ^ (game * 0x9E3779B97F4A7C15L);
+		SplittableRandom random = new SplittableRandom(seed);
+		InputRecorder recorder = null;
+		try {
+			if (game == 0 && this.record != null) {
+				recorder = new InputRecorder(this.record, world, this.mapFile, this.script == null ? seed : 0);
+				world.setRecorder(recorder);
+			}
+
+			for (int turn = 0; turn < this.turns && world.getRunning(); turn++) {
+				if (this.script == null)
+					world.movePlayer(1 + random.nextInt(4));
+				else
+					world.movePlayer(direction(this.script.charAt(turn % this.script.length())));
+			}
+
+			if (recorder != null)
+				recorder.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		result.games++;
+		result.turns += world.getIteration();
+		result.maxTurns = Math.max(result.maxTurns, world.getIteration());
+		if (world.getRunning())
+			result.timeout++;
+		else if (world.getWon())
+			result.won++;
+		else
+			result.caught++;
+	}
+
+	private static int direction(char move) {
+		switch (move) {
+			case 'U': return 1;
+			case 'D': return 2;
+			case 'L': return 3;
+			case 'R': return 4;
+			default: throw new IllegalArgumentException("Invalid move " + move);
+		}
+	}
+
+	/** Outcome of a number of games */
+	private static class Result {
+		int games;
+		int won;
+		int caught;
+		int timeout;
+		long turns;
+		int maxTurns;
+
+		Result add(Result other) {
+			this.games += other.games;
+			this.won += other.won;
+			this.caught += other.caught;
+			this.timeout += other.timeout;
+			this.turns += other.turns;
+			this.maxTurns = Math.max(this.maxTurns, other.maxTurns);
+			return this;
+		}
+	}
+
+	/** Plays the games [from, to), splitting the range until it is small enough */
+	private class Games extends RecursiveTask<Result> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+
+		Games(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Result compute() {
+			if (this.to - this.from > GAMES_PER_TASK) {
+				int middle = (this.from + this.to) >>> 1;
+				Games left = new Games(this.from, middle);
+				left.fork();
+				Result right = new Games(middle, this.to).compute();
+				return left.join().add(right);
+			}
+
+			Result result = new Result();
+			for (int game = this.from; game < this.to; game++)
+				play(game, result);
+			return result;
+		}
+	}
+}
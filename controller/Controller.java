@@ -20,6 +20,8 @@ public class Controller extends JFrame implements KeyListener, ActionListener, M
 
 	/** The world that is updated upon every key press. */
 	private World world;
+	/** Plays the game in real time (null: the world only changes when a key is pressed) */
+	private GameLoop loop;
 	private List<View> views;
 
 	/**
@@ -40,6 +42,15 @@ public class Controller extends JFrame implements KeyListener, ActionListener, M
 		addMouseListener(this);
 	}
 
+	/**
+	 * Creates a controller for the real-time game: key presses are handed to the
+	 * game loop, which applies them at its next tick.
+	 */
+	public Controller(World world, GameLoop loop) {
+		this(world);
+		this.loop = loop;
+	}
+
 	@Override
 	public void keyTyped(KeyEvent e) {
 		// TODO Auto-generated method stub
@@ -49,6 +60,10 @@ public class Controller extends JFrame implements KeyListener, ActionListener, M
 
 	@Override
 	public void keyPressed(KeyEvent e) {
+		if (this.loop != null) {
+			queue(e);
+			return;
+		}
 		// Check if we need to do something. Tells the world to move the player.
 		switch (e.getKeyCode()) {
 		case KeyEvent.VK_UP:
@@ -70,7 +85,6 @@ public class Controller extends JFrame implements KeyListener, ActionListener, M
 		case KeyEvent.VK_R:
 			System.out.println("Restarting...");	// R to restart
 			this.world.restart();
-			// No idea how to refresh the GraphicView
 			break;
 
 		case KeyEvent.VK_E:
@@ -83,6 +97,40 @@ public class Controller extends JFrame implements KeyListener, ActionListener, M
 		}
 	}
 
+	/** Queue the command of a key for the game loop */
+	private void queue(KeyEvent e) {
+		switch (e.getKeyCode()) {
+		case KeyEvent.VK_UP:
+			this.loop.submit(1);
+			break;
+
+		case KeyEvent.VK_DOWN:
+			this.loop.submit(2);
+			break;
+
+		case KeyEvent.VK_LEFT:
+			this.loop.submit(3);
+			break;
+
+		case KeyEvent.VK_RIGHT:
+			this.loop.submit(4);
+			break;
+
+		case KeyEvent.VK_R:
+			System.out.println("Restarting...");
+			this.loop.submit(GameLoop.RESTART);
+			break;
+
+		case KeyEvent.VK_E:
+			this.loop.submit(GameLoop.HARDER);
+			break;
+
+		case KeyEvent.VK_Q:
+			this.loop.submit(GameLoop.EASIER);
+			break;
+		}
+	}
+
 	@Override
 	public void keyReleased(KeyEvent e) {
 		// TODO Auto-generated method stub
@@ -0,0 +1,248 @@
+package controller;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import model.InputLog;
+import model.World;
+
+/**
+ * Plays the game in real time: a thread of its own advances the world at a
+ * fixed number of ticks per second, whether a key is pressed or not. Key
+ * presses are queued as commands and applied at the next tick, so the Swing
+ * event thread never runs the simulation. A tick applies the queued commands
+ * up to the first move; without a move the player stands still and only the
+ * trackers move.
+ *
+ * The loop records how long its ticks take. A tick taking longer than the
+ * tick period is an overrun: the ticks missed meanwhile are skipped rather
+ * than played in a hurry.
+ *
+ * If a tick fails (e.g. the input log cannot be written) the error is
+ * printed and the loop stops; {@link #getFailure()} and {@link #toString()}
+ * tell why the game no longer moves.
+ */
+public class GameLoop {
+
+	/** Commands 1 to 4 move the player (see {@link World#movePlayer(int)}), the same codes as in an {@link InputLog} */
+	public static final int RESTART = InputLog.RESTART;
+	public static final int HARDER = InputLog.HARDER;
+	public static final int EASIER = InputLog.EASIER;
+
+	/** Commands waiting for the next tick at most (more are dropped) */
+	private static final int MAX_COMMANDS = 8;
+	/** Tick durations kept for the percentiles */
+	private static final int HISTORY = 1024;
+
+	private final World world;
+	private final long period;
+	private Thread thread;
+	private volatile boolean stopped;
+	/** Error which stopped the loop, null while it runs or if it was stopped */
+	private volatile RuntimeException failure;
+
+	/** Commands waiting for the next tick (guarded by this) */
+	private final int[] commands = new int[MAX_COMMANDS];
+	private int commandCount;
+	private long coalescedCommands;
+	private long droppedCommands;
+
+	/** Durations of the last HISTORY ticks in nanoseconds, a ring buffer (guarded by this) */
+	private final long[] durations = new long[HISTORY];
+	private long ticks;
+	private long overruns;
+	private long skippedTicks;
+	private long maxDuration;
+
+	/**
+	 * @param world the world to play.
+	 * @param ticksPerSecond how often the world advances.
+	 */
+	public GameLoop(World world, int ticksPerSecond) {
+		if (ticksPerSecond <= 0)
+			throw new IllegalArgumentException("Invalid tick rate " + ticksPerSecond);
+		this.world = world;
+		this.period = TimeUnit.SECONDS.toNanos(1) / ticksPerSecond;
+	}
+
+	/** Starts the simulation thread */
+	public synchronized void start() {
+		if (this.thread != null)
+			throw new IllegalStateException("Game loop already started");
+		this.thread = new Thread(this::run, "Game loop");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/** Stops the simulation thread after the current tick */
+	public void stop() throws InterruptedException {
+		this.stopped = true;
+		Thread thread;
+		synchronized (this) {
+			thread = this.thread;
+		}
+		if (thread != null) {
+			LockSupport.unpark(thread);
+			thread.join();
+		}
+	}
+
+	/**
+	 * Queues a command for the next tick. A command equal to the last one
+	 * queued is merged with it, so the repeats of a held key do not pile up.
+	 *
+	 * @param command 1 to 4 to move (up, down, left, right), {@link #RESTART},
+	 * {@link #HARDER} or {@link #EASIER}.
+	 */
+	public synchronized void submit(int command) {
+		if (command < 1 || command > EASIER)
+			throw new IllegalArgumentException("Invalid command " + command);
+		if (this.commandCount > 0 && this.commands[this.commandCount - 1] == command)
+			this.coalescedCommands++;
+		else if (this.commandCount == MAX_COMMANDS)
+			this.droppedCommands++;
+		else
+			this.commands[this.commandCount++] = command;
+	}
+
+	private void run() {
+		long next = System.nanoTime();
+		while (!this.stopped) {
+			long wait = next - System.nanoTime();
+			if (wait > 0) {
+				LockSupport.parkNanos(this, wait);
+				continue;
+			}
+
+			long start = System.nanoTime();
+			try {
+				tick();
+			} catch (RuntimeException e) {
+				this.failure = e;
+				this.stopped = true;
+				System.err.println("Game loop stopped, a tick failed:");
+				e.printStackTrace();
+				return;
+			}
+			long end = System.nanoTime();
+			next += this.period;
+			synchronized (this) {
+				record(end - start);
+				if (end > next) {
+					// The next tick is due at once; skip the ticks which are a whole period late instead of catching up
+					this.overruns++;
+					long late = (end - next) / this.period;
+					this.skippedTicks += late;
+					next += late * this.period;
+				}
+			}
+		}
+	}
+
+	/** Applies the queued commands up to the first move, then advances the world */
+	private void tick() {
+		while (true) {
+			int command;
+			synchronized (this) {
+				if (this.commandCount == 0) {
+					command = InputLog.STAND_STILL;
+				} else {
+					command = this.commands[0];
+					this.commandCount--;
+					System.arraycopy(this.commands, 1, this.commands, 0, this.commandCount);
+				}
+			}
+			switch (command) {
+				case RESTART:
+					this.world.restart();
+					continue;
+				case HARDER:
+					this.world.changeDifficulty(1);
+					continue;
+				case EASIER:
+					this.world.changeDifficulty(-1);
+					continue;
+				case InputLog.STAND_STILL:
+					this.world.standStill();
+					return;
+				default:
+					this.world.movePlayer(command);
+					return;
+			}
+		}
+	}
+
+	private void record(long duration) {
+		this.durations[(int) (this.ticks % HISTORY)] = duration;
+		this.ticks++;
+		this.maxDuration = Math.max(this.maxDuration, duration);
+	}
+
+	/** Has the loop stopped, by {@link #stop()} or because a tick failed? */
+	public boolean isStopped() {
+		return this.stopped;
+	}
+
+	/** The error a tick failed with, null if none did */
+	public RuntimeException getFailure() {
+		return this.failure;
+	}
+
+	public long getPeriod() {
+		return this.period;
+	}
+
+	public synchronized long getTicks() {
+		return this.ticks;
+	}
+
+	/** Ticks which took longer than the tick period */
+	public synchronized long getOverruns() {
+		return this.overruns;
+	}
+
+	/** Ticks not played because an earlier tick took too long */
+	public synchronized long getSkippedTicks() {
+		return this.skippedTicks;
+	}
+
+	/** Commands merged with an equal command before them (held keys) */
+	public synchronized long getCoalescedCommands() {
+		return this.coalescedCommands;
+	}
+
+	/** Commands dropped because the queue was full */
+	public synchronized long getDroppedCommands() {
+		return this.droppedCommands;
+	}
+
+	public synchronized long getMaxDuration() {
+		return this.maxDuration;
+	}
+
+	/**
+	 * Duration of a tick in nanoseconds which the given share of the recent
+	 * ticks did not exceed (0 if no tick was played yet).
+	 *
+	 * @param percentile between 0 and 100, e.g. 99 for the 99th percentile.
+	 */
+	public synchronized long getDuration(double percentile) {
+		int count = (int) Math.min(this.ticks, HISTORY);
+		if (count == 0)
+			return 0;
+		long[] sorted = Arrays.copyOf(this.durations, count);
+		Arrays.sort(sorted);
+		int index = (int) Math.ceil(percentile / 100 * count) - 1;
+		return sorted[Math.max(0, Math.min(count - 1, index))];
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d ticks of %.1f ms: p50 %.2f ms, p99 %.2f ms, max %.2f ms, %d overruns (%d ticks skipped), %d commands coalesced, %d dropped",
+				getTicks(), this.period / 1e6, getDuration(50) / 1e6, getDuration(99) / 1e6, getMaxDuration() / 1e6,
+				getOverruns(), getSkippedTicks(), getCoalescedCommands(), getDroppedCommands())
+				+ (this.failure != null ? ", stopped by " + this.failure : "");
+	}
+
+}
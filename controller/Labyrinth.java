@@ -1,10 +1,14 @@
 package controller;
 import java.awt.Dimension;
 import java.awt.Insets;
+import java.io.IOException;
+import java.nio.file.Paths;
 
 import javax.swing.JFrame;
 
+import model.InputRecorder;
 import model.World;
+import model.WorldMetrics;
 import view.ConsoleView;
 import view.GraphicView;
 
@@ -14,7 +18,59 @@ import view.GraphicView;
  */
 public class Labyrinth {
 
+	/** The map of the game, 25x25 tiles (type 0 is a wall) */
+	static final String MAP =
+		"0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0," +
+		"0,1,0,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,0," +
+		"0,1,0,0,1,1,1,0,1,1,1,1,1,1,0,1,1,0,0,0,0,1,1,1,0," +
+		"0,1,1,0,1,1,1,0,1,1,1,1,1,0,0,1,1,1,1,1,0,0,1,1,0," +
+		"0,1,1,1,1,1,1,0,1,1,0,1,0,0,1,1,1,1,1,1,1,0,1,1,0," +
+		"0,1,0,0,0,0,0,0,0,0,0,0,0,1,1,1,1,1,0,0,1,0,1,1,0," +
+		"0,1,1,1,1,0,1,1,1,1,0,1,0,1,1,1,1,1,0,1,1,0,1,1,0," +
+		"0,1,0,1,1,0,1,0,1,1,0,1,1,1,0,0,0,1,0,1,1,0,1,1,0," +
+		"0,1,0,1,1,0,0,0,1,1,0,1,1,1,0,0,0,1,0,0,0,0,1,1,0," +
+		"0,1,0,0,1,1,1,1,1,1,0,0,1,1,0,0,0,1,1,1,1,1,1,1,0," +
+		"0,1,1,0,1,1,1,1,1,1,0,1,1,1,1,1,1,1,0,1,1,1,1,0,0," +
+		"0,1,1,1,1,0,0,0,0,0,0,0,0,1,1,1,1,1,0,1,1,1,1,1,0," +
+		"0,1,0,1,0,0,1,1,1,1,0,1,1,1,1,0,0,0,0,0,0,1,1,1,0," +
+		"0,1,0,1,1,0,1,0,0,1,0,0,1,1,1,0,1,1,1,1,1,1,1,1,0," +
+		"0,1,0,0,0,0,1,0,1,1,1,0,1,1,1,1,1,1,1,1,1,1,1,1,0," +
+		"0,1,1,1,1,0,1,0,0,1,1,0,1,1,1,1,1,0,0,0,0,0,0,1,0," +
+		"0,1,1,0,1,0,1,1,0,0,0,0,0,0,0,0,1,1,1,1,1,1,1,1,0," +
+		"0,1,1,0,1,0,1,1,1,1,1,1,1,1,1,0,0,0,1,1,1,0,1,1,0," +
+		"0,1,1,0,1,1,1,0,1,0,0,0,0,0,1,1,1,0,1,1,1,0,1,1,0," +
+		"0,1,1,0,0,0,0,0,1,0,1,1,1,0,1,1,1,0,0,1,1,0,1,1,0," +
+		"0,1,0,0,1,1,1,1,1,0,1,0,0,0,1,1,1,1,0,0,1,0,0,1,0," +
+		"0,1,1,0,1,0,0,1,1,0,1,1,1,1,1,1,0,1,1,1,1,0,1,1,0," +
+		"0,1,1,0,1,1,0,0,1,0,0,0,0,0,0,1,0,1,0,1,1,0,1,1,0," +
+		"0,1,1,1,1,1,1,0,1,1,1,1,1,1,1,1,1,1,0,1,1,1,1,1,0," +
+		"0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0";
+
+	/**
+	 * @param args "--realtime [ticks per second]" to play in real time: the
+	 * trackers move at a fixed rate (5 ticks per second by default) whether a
+	 * key is pressed or not. "--metrics" measures the turns and views and
+	 * shows the numbers through JMX (labyrinth:type=World,name=game).
+	 * "--record file" writes the commands played into an input log, which
+	 * {@link Replay} plays again.
+	 */
 	public static void main(String[] args) throws Exception {
+		int ticksPerSecond = 0;
+		boolean measure = false;
+		String record = null;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--realtime"))
+				ticksPerSecond = i + 1 < args.length && args[i+1].matches("\\d+") ? Integer.parseInt(args[++i]) : 5;
+			else if (args[i].equals("--metrics"))
+				measure = true;
+			else if (args[i].equals("--record") && i + 1 < args.length)
+				record = args[++i];
+		}
+		final String log = record;
+		final int realtime = ticksPerSecond;
+		final WorldMetrics metrics = measure ? new WorldMetrics() : null;
+		if (metrics != null)
+			metrics.register("game");
         javax.swing.SwingUtilities.invokeLater(new Runnable() {
             public void run() {
             	// Dimension of the game board (25x25).
@@ -26,43 +82,35 @@ public class Labyrinth {
     			// Create a new game world.
             	World world = null;
                 try {
-                    world = new World(width, height,
-                        "0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0," +
-                        "0,1,0,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,0," +
-                        "0,1,0,0,1,1,1,0,1,1,1,1,1,1,0,1,1,0,0,0,0,1,1,1,0," +
-                        "0,1,1,0,1,1,1,0,1,1,1,1,1,0,0,1,1,1,1,1,0,0,1,1,0," +
-                        "0,1,1,1,1,1,1,0,1,1,0,1,0,0,1,1,1,1,1,1,1,0,1,1,0," +
-                        "0,1,0,0,0,0,0,0,0,0,0,0,0,1,1,1,1,1,0,0,1,0,1,1,0," +
-                        "0,1,1,1,1,0,1,1,1,1,0,1,0,1,1,1,1,1,0,1,1,0,1,1,0," +
-                        "0,1,0,1,1,0,1,0,1,1,0,1,1,1,0,0,0,1,0,1,1,0,1,1,0," +
-                        "0,1,0,1,1,0,0,0,1,1,0,1,1,1,0,0,0,1,0,0,0,0,1,1,0," +
-                        "0,1,0,0,1,1,1,1,1,1,0,0,1,1,0,0,0,1,1,1,1,1,1,1,0," +
-                        "0,1,1,0,1,1,1,1,1,1,0,1,1,1,1,1,1,1,0,1,1,1,1,0,0," +
-                        "0,1,1,1,1,0,0,0,0,0,0,0,0,1,1,1,1,1,0,1,1,1,1,1,0," +
-                        "0,1,0,1,0,0,1,1,1,1,0,1,1,1,1,0,0,0,0,0,0,1,1,1,0," +
-                        "0,1,0,1,1,0,1,0,0,1,0,0,1,1,1,0,1,1,1,1,1,1,1,1,0," +
-                        "0,1,0,0,0,0,1,0,1,1,1,0,1,1,1,1,1,1,1,1,1,1,1,1,0," +
-                        "0,1,1,1,1,0,1,0,0,1,1,0,1,1,1,1,1,0,0,0,0,0,0,1,0," +
-                        "0,1,1,0,1,0,1,1,0,0,0,0,0,0,0,0,1,1,1,1,1,1,1,1,0," +
-                        "0,1,1,0,1,0,1,1,1,1,1,1,1,1,1,0,0,0,1,1,1,0,1,1,0," +
-                        "0,1,1,0,1,1,1,0,1,0,0,0,0,0,1,1,1,0,1,1,1,0,1,1,0," +
-                        "0,1,1,0,0,0,0,0,1,0,1,1,1,0,1,1,1,0,0,1,1,0,1,1,0," +
-                        "0,1,0,0,1,1,1,1,1,0,1,0,0,0,1,1,1,1,0,0,1,0,0,1,0," +
-                        "0,1,1,0,1,0,0,1,1,0,1,1,1,1,1,1,0,1,1,1,1,0,1,1,0," +
-                        "0,1,1,0,1,1,0,0,1,0,0,0,0,0,0,1,0,1,0,1,1,0,1,1,0," +
-                        "0,1,1,1,1,1,1,0,1,1,1,1,1,1,1,1,1,1,0,1,1,1,1,1,0," +
-                        "0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0", 
-                        start, destination, difficulty);
+                    world = new World(width, height, MAP, start, destination, difficulty);
                 }
                 catch (Exception e) {
                     System.out.println("Unable to load map (" + e + "). Exiting...");
                     System.exit(-1);
                 }
+                world.setMetrics(metrics);
+                if (log != null) {
+                	try {
+                		InputRecorder recorder = new InputRecorder(Paths.get(log), world, "", 0);
+                		world.setRecorder(recorder);
+                		// The last run of commands is written when the game is closed
+                		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                			try {
+                				recorder.close();
+                			} catch (IOException e) {
+                				System.out.println("Unable to write " + log + " (" + e + ")");
+                			}
+                		}));
+                	} catch (IOException e) {
+                		System.out.println("Unable to record to " + log + " (" + e + "). Exiting...");
+                		System.exit(-1);
+                	}
+                }
             	
             	// Size of a field in the graphical view.
             	Dimension fieldDimensions = new Dimension(50, 50);
             	// Create and register graphical view.
-            	GraphicView gview = new GraphicView(width, height, fieldDimensions, world.getMap(), destination, difficulty);
+            	GraphicView gview = new GraphicView(width, height, fieldDimensions, world.getTerrain(), destination, difficulty);
             	world.registerView(gview);
                 gview.setVisible(true);
             	
@@ -71,7 +119,16 @@ public class Labyrinth {
             	world.registerView(cview);
             	
             	// Create controller and initialize JFrame.
-                Controller controller = new Controller(world);
+                Controller controller;
+                if (realtime > 0) {
+                	GameLoop loop = new GameLoop(world, realtime);
+                	controller = new Controller(world, loop);
+                	// Report how well the loop kept up when the game is closed
+                	Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.println(loop)));
+                	loop.start();
+                } else {
+                	controller = new Controller(world);
+                }
                 controller.setTitle("Labyrinth-Person");
                 controller.setResizable(false);                
                 controller.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -0,0 +1,24 @@
+package controller;
+import java.nio.file.Paths;
+
+import model.MapLoader;
+import model.Terrain;
+
+/**
+ * Converts a map (text or binary) into the compact binary format, which loads
+ * without parsing.
+ *
+ * Usage: MapConverter input output
+ */
+public class MapConverter {
+
+	public static void main(String[] args) throws Exception {
+		if (args.length != 2) {
+			System.out.println("Usage: MapConverter input output");
+			System.exit(-1);
+		}
+		Terrain terrain = MapLoader.load(Paths.get(args[0]));
+		MapLoader.save(terrain, Paths.get(args[1]));
+		System.out.println("Converted " + terrain.getWidth() + "x" + terrain.getHeight() + " map to " + args[1]);
+	}
+}
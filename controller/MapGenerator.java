@@ -0,0 +1,55 @@
+package controller;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import model.MazeGenerator;
+
+/**
+ * Generates a labyrinth with the {@link MazeGenerator} and streams it into a
+ * map file, binary unless the name ends with .txt. Maps of any size (up to
+ * about 46000x46000 tiles) are written without holding them on the heap.
+ *
+ * Usage: MapGenerator output width height [--seed n] [--corridor tiles]
+ * [--loops percent] [--rooms percent]
+ *
+ * Prints the start and destination tiles to play the map with, e.g. in the
+ * BatchRunner (--map output --start tile --destination tile).
+ */
+public class MapGenerator {
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.out.println("Usage: MapGenerator output width height [--seed n] [--corridor tiles] [--loops percent] [--rooms percent]");
+			System.exit(2);
+		}
+		Path output = Paths.get(args[0]);
+		long seed = 1;
+		int corridor = 1;
+		int loops = 0;
+		int rooms = 0;
+		for (int i = 3; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+				case "--seed": seed = Long.parseLong(args[i+1]); break;
+				case "--corridor": corridor = Integer.parseInt(args[i+1]); break;
+				case "--loops": loops = Integer.parseInt(args[i+1]); break;
+				case "--rooms": rooms = Integer.parseInt(args[i+1]); break;
+				default: throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+
+		MazeGenerator generator = new MazeGenerator(Integer.parseInt(args[1]), Integer.parseInt(args[2]), seed);
+		generator.setCorridorWidth(corridor);
+		generator.setLoops(loops);
+		generator.setRooms(rooms);
+		long begin = System.nanoTime();
+		if (args[0].endsWith(".txt"))
+			generator.writeText(output);
+		else
+			generator.write(output);
+		double seconds = (System.nanoTime() - begin) / 1e9;
+		long tiles = (long) generator.getWidth() * generator.getHeight();
+		System.out.printf("Generated %dx%d map (seed %d) in %.2f s (%.0f Mtiles/s) to %s%n",
+				generator.getWidth(), generator.getHeight(), seed, seconds, tiles / seconds / 1e6, output);
+		System.out.println("start " + generator.getStart() + ", destination " + generator.getDestination());
+	}
+}
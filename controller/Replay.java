@@ -0,0 +1,73 @@
+package controller;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import model.InputLog;
+import model.Landmarks;
+import model.MapLoader;
+import model.Terrain;
+import model.World;
+
+/**
+ * Plays a recorded game (an {@link InputLog} written with --record by the
+ * game or the BatchRunner) on a headless world as fast as it goes, and
+ * checks that the world goes through the recorded states. A bug seen in a
+ * game can be replayed as often as needed; a long recording is a realistic
+ * workload for measuring the model.
+ *
+ * Usage: Replay log [--map file] [--rounds n]
+ *
+ * The map is loaded from where it was recorded (the built-in map of the
+ * game if the log names none) unless --map names another file with the same
+ * tiles. Exits with status 1 if the replay leaves the recorded game.
+ */
+public class Replay {
+
+	public static void main(String[] args) throws Exception {
+		if (args.length == 0) {
+			System.out.println("Usage: Replay log [--map file] [--rounds n]");
+			System.exit(2);
+		}
+		InputLog log = InputLog.read(Paths.get(args[0]));
+		String mapFile = log.getMap();
+		int rounds = 1;
+		for (int i = 1; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+				case "--map": mapFile = args[i+1]; break;
+				case "--rounds": rounds = Integer.parseInt(args[i+1]); break;
+				default: throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		System.out.println(log);
+
+		Terrain terrain;
+		Landmarks landmarks = null;
+		if (mapFile.isEmpty()) {
+			terrain = MapLoader.parse(Labyrinth.MAP, log.getWidth(), log.getHeight());
+			if (log.getLandmarks() > 0)
+				landmarks = Landmarks.compute(terrain, log.getLandmarks());
+		} else {
+			Path path = Paths.get(mapFile);
+			terrain = MapLoader.load(path);
+			if (log.getLandmarks() > 0)
+				landmarks = Landmarks.forMap(path, terrain, log.getLandmarks());
+		}
+
+		for (int round = 1; round <= rounds; round++) {
+			World world = log.createWorld(terrain, landmarks);
+			long begin = System.nanoTime();
+			long commands;
+			try {
+				commands = log.replay(world);
+			} catch (IllegalStateException e) {
+				System.out.println(e.getMessage());
+				System.exit(1);
+				return;
+			}
+			double seconds = (System.nanoTime() - begin) / 1e9;
+			System.out.printf("round %d: %d commands in %.3f s (%.0f commands/s), %s after %d turns, every state as recorded%n",
+					round, commands, seconds, commands / seconds,
+					world.getRunning() ? "running" : world.getWon() ? "won" : "caught", world.getIteration());
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package model;
+
+/**
+ * The walkable tiles of a map as one bit per tile, 64 tiles of a row to a
+ * word, so a search can look at a whole stretch of a row with a few bit
+ * operations (see {@link JumpPointPlanner}). Shared by all trackers of a
+ * world; a changed tile only changes its bit.
+ */
+public class BitGrid {
+
+    private final int width;
+    private final int height;
+    /** Words per row */
+    private final int words;
+    /** The map, shared with the world */
+    private final Terrain terrain;
+    /** Bit x % 64 of word y * words + x / 64 is set if tile (x, y) is walkable */
+    private final long[] bits;
+
+    public BitGrid(Terrain terrain) {
+        this.width = terrain.getWidth();
+        this.height = terrain.getHeight();
+        this.words = (this.width + 63) >>> 6;
+        this.terrain = terrain;
+        this.bits = new long[this.words * this.height];
+        for (int tile = 0; tile < terrain.getSize(); tile++)
+            if (terrain.isWalkable(tile))
+                tileChanged(tile);
+    }
+
+    public Terrain getTerrain() { return this.terrain; }
+    /** Words per row */
+    public int getWords() { return this.words; }
+    /** Approximate number of bytes used by the bits */
+    public long getMemory() { return 8L * this.bits.length; }
+
+    public boolean isWalkable(int x, int y) {
+        return (getWord(x >>> 6, y) & (1L << x)) != 0;
+    }
+
+    /** Bits of the tiles 64 * word to 64 * word + 63 of a row, 0 outside the map */
+    public long getWord(int word, int y) {
+        if (y < 0 || y >= this.height || word < 0 || word >= this.words)
+            return 0;
+        return this.bits[y * this.words + word];
+    }
+
+    /** Copy the walkability of a changed tile from the map */
+    public void tileChanged(int tile) {
+        int x = tile % this.width;
+        int index = (tile / this.width) * this.words + (x >>> 6);
+        if (this.terrain.isWalkable(tile))
+            this.bits[index] |= 1L << x;
+        else
+            this.bits[index] &= ~(1L << x);
+    }
+}
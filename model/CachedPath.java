@@ -0,0 +1,132 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * The path a tracker follows while the world uses a {@link PathCache}. As
+ * long as the player stays where the path ends, the tracker keeps walking it
+ * instead of searching again. If the player moves to a neighbouring tile the
+ * path is trimmed (the player stepped back onto it) or extended by that tile,
+ * up to {@link #MAX_EXTENSIONS} times before a new search straightens it out.
+ */
+public class CachedPath {
+
+    /** Tiles added for the player's moves before the path is searched again */
+    public static final int MAX_EXTENSIONS = 8;
+
+    private final Terrain terrain;
+    /** Tiles from where the tracker started to the destination, the tracker stands on tiles[index] */
+    private int[] tiles = new int[16];
+    private int index;
+    private int length;
+    private int extensions;
+    /** Terrain modifications the path was found for */
+    private int modifications;
+
+    public CachedPath(Terrain terrain) {
+        this.terrain = terrain;
+    }
+
+    /** Is there a path to follow? */
+    public boolean isActive() { return this.length > 0; }
+    /** Is there a path, found on the map as it is now? */
+    public boolean isCurrent() { return this.length > 0 && this.modifications == this.terrain.getModifications(); }
+    /** Tiles left to walk */
+    public int getRemaining() { return this.length == 0 ? 0 : this.length - 1 - this.index; }
+
+    /** Forget the path */
+    public void clear() {
+        this.length = 0;
+    }
+
+    /**
+     * Keeps the path if it still leads from the tracker's tile to the
+     * destination, trimming or extending it if the destination moved to a
+     * neighbouring tile.
+     *
+     * @return false if the tracker needs a new path.
+     */
+    public boolean reuse(int from, int destination) {
+        if (this.length == 0 || this.tiles[this.index] != from || this.terrain.getModifications() != this.modifications)
+            return false;
+        int end = this.tiles[this.length - 1];
+        if (end == destination)
+            return true;
+        int width = this.terrain.getWidth();
+        if (Math.abs(end % width - destination % width) + Math.abs(end / width - destination / width) != 1)
+            return false;
+        if (this.length - this.index >= 2 && this.tiles[this.length - 2] == destination) {
+            // The player stepped back onto the path
+            this.length--;
+            return true;
+        }
+        if (this.extensions == MAX_EXTENSIONS)
+            return false;
+        if (this.length == this.tiles.length)
+            this.tiles = Arrays.copyOf(this.tiles, 2 * this.length);
+        this.tiles[this.length++] = destination;
+        this.extensions++;
+        return true;
+    }
+
+    /** Follow the given tiles from the first one (where the tracker stands) to the last one */
+    public void set(int[] tiles, int offset, int length) {
+        if (this.tiles.length < length)
+            this.tiles = new int[Math.max(length, 2 * this.tiles.length)];
+        System.arraycopy(tiles, offset, this.tiles, 0, length);
+        this.index = 0;
+        this.length = length;
+        this.extensions = 0;
+        this.modifications = this.terrain.getModifications();
+    }
+
+    /** Follow the path the search has just found to its destination, and offer it to the cache */
+    void set(PathFinder pathFinder, int start, int destination, PathCache cache) {
+        int length = 1;
+        for (int tile = destination; tile != start; tile = pathFinder.getPredecessor(tile))
+            length++;
+        if (this.tiles.length < length)
+            this.tiles = new int[Math.max(length, 2 * this.tiles.length)];
+        int i = length;
+        for (int tile = destination; tile != start; tile = pathFinder.getPredecessor(tile))
+            this.tiles[--i] = tile;
+        this.tiles[0] = start;
+        this.index = 0;
+        this.length = length;
+        this.extensions = 0;
+        this.modifications = this.terrain.getModifications();
+        cache.put(this.tiles, 0, length);
+    }
+
+    /**
+     * Follow the predecessors of a search from a tile back to the search's
+     * start (a search from the player towards the tracker, see
+     * {@link SearchScheduler}).
+     */
+    void setReversed(PathFinder pathFinder, int from) {
+        int start = pathFinder.getStart();
+        int length = 1;
+        for (int tile = from; tile != start; tile = pathFinder.getPredecessor(tile))
+            length++;
+        if (this.tiles.length < length)
+            this.tiles = new int[Math.max(length, 2 * this.tiles.length)];
+        int i = 0;
+        for (int tile = from; tile != start; tile = pathFinder.getPredecessor(tile))
+            this.tiles[i++] = tile;
+        this.tiles[i] = start;
+        this.index = 0;
+        this.length = length;
+        this.extensions = 0;
+        this.modifications = this.terrain.getModifications();
+    }
+
+    /**
+     * Returns the tile after {@code from} on the path, or {@code from} itself
+     * if the tracker is not on the path or at its end.
+     */
+    public int nextStep(int from) {
+        if (this.length == 0 || this.tiles[this.index] != from || this.index == this.length - 1)
+            return from;
+        return this.tiles[++this.index];
+    }
+}
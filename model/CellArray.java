@@ -0,0 +1,55 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * An int for every tile of a map, stored in small pages which are only
+ * allocated once a value on them is written (unwritten values are 0). Search
+ * state kept in cell arrays grows with the part of the map a search actually
+ * explores, not with the size of the map, and the pages are reused by later
+ * searches.
+ */
+public class CellArray {
+
+    private static final int PAGE_BITS = 8;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private final int[][] pages;
+    /** Number of allocated pages */
+    private int allocated;
+
+    /**
+     * @param cells number of tiles of the map.
+     */
+    public CellArray(int cells) {
+        this.pages = new int[(cells + PAGE_SIZE - 1) >>> PAGE_BITS][];
+    }
+
+    public int get(int cell) {
+        int[] page = this.pages[cell >>> PAGE_BITS];
+        return page == null ? 0 : page[cell & PAGE_MASK];
+    }
+
+    public void set(int cell, int value) {
+        int[] page = this.pages[cell >>> PAGE_BITS];
+        if (page == null) {
+            page = new int[PAGE_SIZE];
+            this.pages[cell >>> PAGE_BITS] = page;
+            this.allocated++;
+        }
+        page[cell & PAGE_MASK] = value;
+    }
+
+    /** Set all values to 0 (the pages stay allocated) */
+    public void clear() {
+        for (int[] page : this.pages)
+            if (page != null)
+                Arrays.fill(page, 0);
+    }
+
+    /** Approximate number of bytes used by the allocated pages */
+    public long getMemory() {
+        return 16L + 4L * this.pages.length + this.allocated * (16L + 4L * PAGE_SIZE);
+    }
+}
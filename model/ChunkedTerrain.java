@@ -0,0 +1,306 @@
+package model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A map which does not have to fit on the heap. The tile types stay in a
+ * binary map file (see {@link MapLoader#save(Terrain, Path)}) and are read in
+ * chunks of 64x64 tiles when the player, a tracker, a search or a view first
+ * touches them. Loaded chunks are kept off the heap in a fixed number of
+ * slots; once the memory budget is used up the least recently used chunk is
+ * evicted.
+ *
+ * The map file is only ever read: chunks with changed tiles
+ * ({@link World#setTileType(int, int, int)}) are written to a temporary
+ * spill file when they are evicted and read from there the next time, so
+ * changes do not take memory beyond the budget either.
+ *
+ * Tiles can be read on any thread, e.g. by the views while the world
+ * searches. Every thread remembers the chunk it read last and its slot, and
+ * reads from it without locking; only switching to another chunk (which may
+ * load it and evict another) takes the terrain's lock. A slot's version
+ * changes when it gets another chunk, so a reader whose chunk was evicted
+ * meanwhile notices and reads again. Changes to the tiles and worlds
+ * sharing the terrain still have to be used by one thread at a time.
+ */
+public class ChunkedTerrain extends Terrain {
+
+    private static final int CHUNK_BITS = 6;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int CHUNK_BYTES = CHUNK_SIZE * CHUNK_SIZE;
+    /** Fewest chunks kept in memory (a search looks at up to four chunks around a tile) */
+    private static final int MIN_SLOTS = 16;
+    /** Most chunks kept in memory (slot offsets have to fit into an int) */
+    private static final int MAX_SLOTS = Integer.MAX_VALUE / CHUNK_BYTES;
+    private static final int REGION_BITS = Long.numberOfTrailingZeros(MapLoader.REGION_SIZE);
+
+    private final int width;
+    private final int height;
+    /** Number of chunks per row of chunks */
+    private final int chunksX;
+    /** The file, mapped in regions of MapLoader.REGION_SIZE bytes */
+    private final MappedByteBuffer[] regions;
+    /** Position of the first tile in the file */
+    private final long offset;
+    /** Contents of the loaded chunks, CHUNK_BYTES per slot */
+    private final ByteBuffer slots;
+    /** Slot of every chunk, -1 if it is not loaded */
+    private final int[] slotOf;
+    /** Chunk stored in a slot */
+    private final int[] chunkOf;
+    /** Has a tile of the chunk in a slot been changed? */
+    private final boolean[] dirty;
+    /** Slots in least recently used order: a doubly linked list, the head was used last */
+    private final int[] previous;
+    private final int[] next;
+    private int head = -1;
+    private int tail = -1;
+    /** Number of slots in use */
+    private int used;
+    /** Position of a changed chunk in the spill file (in chunks), -1 if it has not been spilled */
+    private final int[] spillOf;
+    /** Temporary file of evicted changed chunks, created when the first one is evicted */
+    private FileChannel spill;
+    private int spilled;
+
+    /** Per slot: changes whenever the slot gets another chunk */
+    private final AtomicIntegerArray versions;
+    /** The chunk each thread used last; the thread which opened the map keeps its own at hand */
+    private final ThreadLocal<Cursor> cursors = ThreadLocal.withInitial(Cursor::new);
+    private final Thread owner = Thread.currentThread();
+    private final Cursor ownerCursor = new Cursor();
+
+    private long loads;
+    private long evictions;
+
+    /**
+     * @param channel binary map file, it may be closed once the terrain is created.
+     * @param offset position of the first tile in the file.
+     * @param memoryBudget bytes available for loaded chunks.
+     */
+    ChunkedTerrain(FileChannel channel, long offset, int width, int height, long memoryBudget) throws IOException {
+        super(width, height);
+        this.width = width;
+        this.height = height;
+        this.chunksX = (width + CHUNK_MASK) >>> CHUNK_BITS;
+        int chunks = this.chunksX * ((height + CHUNK_MASK) >>> CHUNK_BITS);
+        this.offset = offset;
+
+        long size = offset + (long) width * height;
+        this.regions = new MappedByteBuffer[(int) ((size + MapLoader.REGION_SIZE - 1) >>> REGION_BITS)];
+        for (int i = 0; i < this.regions.length; i++) {
+            long position = (long) i << REGION_BITS;
+            this.regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MapLoader.REGION_SIZE, size - position));
+        }
+
+        int capacity = (int) Math.min(Math.max(memoryBudget / CHUNK_BYTES, MIN_SLOTS), Math.min(chunks, MAX_SLOTS));
+        this.slots = ByteBuffer.allocateDirect(capacity * CHUNK_BYTES);
+        this.slotOf = new int[chunks];
+        Arrays.fill(this.slotOf, -1);
+        this.spillOf = new int[chunks];
+        Arrays.fill(this.spillOf, -1);
+        this.chunkOf = new int[capacity];
+        this.dirty = new boolean[capacity];
+        this.previous = new int[capacity];
+        this.next = new int[capacity];
+        this.versions = new AtomicIntegerArray(capacity);
+    }
+
+    /** Number of chunks read from the file */
+    public synchronized long getLoads() { return this.loads; }
+    /** Number of chunks evicted to make room for others */
+    public synchronized long getEvictions() { return this.evictions; }
+    /** Number of chunks currently in memory */
+    public synchronized int getLoadedChunks() { return this.used; }
+    /** Number of changed chunks in the spill file */
+    public synchronized int getSpilledChunks() { return this.spilled; }
+
+    /** Approximate number of bytes used by the loaded chunks and the chunk tables */
+    public long getMemory() {
+        return this.slots.capacity() + 8L * this.slotOf.length + 13L * this.chunkOf.length;
+    }
+
+    @Override
+    public int getType(int tile) {
+        return getType(tile % this.width, tile / this.width);
+    }
+
+    @Override
+    public int getType(int x, int y) {
+        int chunk = (y >>> CHUNK_BITS) * this.chunksX + (x >>> CHUNK_BITS);
+        Cursor cursor = Thread.currentThread() == this.owner ? this.ownerCursor : this.cursors.get();
+        while (true) {
+            if (cursor.chunk != chunk)
+                locate(chunk, cursor);
+            int type = this.slots.get(position(cursor.slot, x, y)) & 0xFF;
+            // The tile was read before the version is checked again
+            VarHandle.loadLoadFence();
+            if (this.versions.get(cursor.slot) == cursor.version)
+                return type;
+            // The chunk was evicted while it was read
+            cursor.chunk = -1;
+        }
+    }
+
+    @Override
+    public boolean isWalkable(int tile) {
+        return getType(tile % this.width, tile / this.width) != 0;
+    }
+
+    /** Reading is thread safe, but parallel searches would wait for each other's chunk switches, so it is not */
+    @Override
+    boolean isConcurrent() {
+        return false;
+    }
+
+    @Override
+    synchronized void store(int tile, byte type) {
+        int x = tile % this.width;
+        int y = tile / this.width;
+        Cursor cursor = Thread.currentThread() == this.owner ? this.ownerCursor : this.cursors.get();
+        locate((y >>> CHUNK_BITS) * this.chunksX + (x >>> CHUNK_BITS), cursor);
+        this.slots.put(position(cursor.slot, x, y), type);
+        this.dirty[cursor.slot] = true;
+    }
+
+    /** Position of a tile in the slots */
+    private static int position(int slot, int x, int y) {
+        return slot * CHUNK_BYTES + ((y & CHUNK_MASK) << CHUNK_BITS) + (x & CHUNK_MASK);
+    }
+
+    /** Point a thread's cursor at the slot of a chunk, load the chunk if necessary */
+    private synchronized void locate(int chunk, Cursor cursor) {
+        int slot = this.slotOf[chunk];
+        if (slot < 0)
+            slot = load(chunk);
+        else
+            moveToHead(slot);
+        cursor.chunk = chunk;
+        cursor.slot = slot;
+        cursor.version = this.versions.get(slot);
+    }
+
+    private int load(int chunk) {
+        int slot;
+        if (this.used < this.chunkOf.length) {
+            slot = this.used++;
+        } else {
+            slot = this.tail;
+            evict(slot);
+            unlink(slot);
+            // Readers of the evicted chunk see this before the slot is overwritten (a full fence)
+            this.versions.incrementAndGet(slot);
+        }
+        this.chunkOf[slot] = chunk;
+        this.slotOf[chunk] = slot;
+        this.dirty[slot] = false;
+        link(slot);
+
+        if (this.spillOf[chunk] >= 0) {
+            // The spill file keeps its copy, it is only written again if the chunk changes again
+            transfer(slot, this.spillOf[chunk], false);
+        } else {
+            int x = (chunk % this.chunksX) << CHUNK_BITS;
+            int y = (chunk / this.chunksX) << CHUNK_BITS;
+            int columns = Math.min(CHUNK_SIZE, this.width - x);
+            int rows = Math.min(CHUNK_SIZE, this.height - y);
+            for (int row = 0; row < rows; row++)
+                read(this.offset + (long) (y + row) * this.width + x, slot * CHUNK_BYTES + (row << CHUNK_BITS), columns);
+        }
+        this.loads++;
+        return slot;
+    }
+
+    private void evict(int slot) {
+        int chunk = this.chunkOf[slot];
+        if (this.dirty[slot]) {
+            if (this.spillOf[chunk] < 0)
+                this.spillOf[chunk] = this.spilled++;
+            transfer(slot, this.spillOf[chunk], true);
+        }
+        this.slotOf[chunk] = -1;
+        this.evictions++;
+    }
+
+    /** Write a slot to the spill file or read it back */
+    private void transfer(int slot, int position, boolean write) {
+        try {
+            if (this.spill == null)
+                this.spill = FileChannel.open(Files.createTempFile("labyrinth", ".spill"), StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+            ByteBuffer buffer = this.slots.duplicate();
+            buffer.limit((slot + 1) * CHUNK_BYTES).position(slot * CHUNK_BYTES);
+            long offset = (long) position * CHUNK_BYTES;
+            while (buffer.hasRemaining()) {
+                int count = write ? this.spill.write(buffer, offset) : this.spill.read(buffer, offset);
+                if (count < 0)
+                    throw new IOException("Spill file is truncated");
+                offset += count;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Copy bytes of the file into a slot (a row may span two regions) */
+    private void read(long position, int target, int length) {
+        while (length > 0) {
+            MappedByteBuffer region = this.regions[(int) (position >>> REGION_BITS)];
+            int index = (int) (position - ((position >>> REGION_BITS) << REGION_BITS));
+            int count = Math.min(length, region.capacity() - index);
+            this.slots.put(target, region, index, count);
+            position += count;
+            target += count;
+            length -= count;
+        }
+    }
+
+    /** The chunk a thread used last, its slot and the slot's version then */
+    private static class Cursor {
+        int chunk = -1;
+        int slot;
+        int version;
+    }
+
+    private void moveToHead(int slot) {
+        if (slot == this.head)
+            return;
+        unlink(slot);
+        link(slot);
+    }
+
+    /** Insert a slot at the head of the list */
+    private void link(int slot) {
+        this.previous[slot] = -1;
+        this.next[slot] = this.head;
+        if (this.head >= 0)
+            this.previous[this.head] = slot;
+        this.head = slot;
+        if (this.tail < 0)
+            this.tail = slot;
+    }
+
+    private void unlink(int slot) {
+        int before = this.previous[slot];
+        int after = this.next[slot];
+        if (before >= 0)
+            this.next[before] = after;
+        else
+            this.head = after;
+        if (after >= 0)
+            this.previous[after] = before;
+        else
+            this.tail = before;
+    }
+}
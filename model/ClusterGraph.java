@@ -0,0 +1,268 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * The abstract graph of hierarchical pathfinding (HPA*). The map is split into
+ * square clusters; where walkable tiles face each other across the border of
+ * two clusters there is an entrance, and the tiles on both sides of it are the
+ * nodes of the graph. Nodes of the same cluster are connected by their
+ * distance inside the cluster, which is computed once when the graph is built;
+ * the two nodes of an entrance are one step apart. A search on this graph
+ * visits a few nodes per cluster instead of every tile.
+ *
+ * The graph is shared by all trackers ({@link HierarchicalPlanner} holds the
+ * search state). When a tile changes only its cluster, and the neighbouring
+ * cluster if the tile lies on their border, is built again.
+ *
+ * See A. Botea, M. Müller, J. Schaeffer: Near Optimal Hierarchical
+ * Path-Finding (2004).
+ */
+public class ClusterGraph {
+
+    /** Width and height of a cluster in tiles */
+    public static final int CLUSTER_SIZE = 16;
+    /** Distance between two nodes of a cluster which cannot reach each other */
+    public static final int UNREACHABLE = -1;
+    /** Entrances at least this wide get a node at both ends instead of one in the middle */
+    private static final int WIDE_ENTRANCE = 6;
+
+    private final int width;
+    private final int height;
+    /** The map, shared with the world */
+    private final Terrain terrain;
+    private final int clustersX;
+    private final int clustersY;
+    /** Tiles of the nodes of each cluster, sorted */
+    private final int[][] nodes;
+    /**
+     * Edges between the nodes of each cluster, grouped by node: the edges of
+     * the i-th node are [edgeStart[i], edgeStart[i + 1]). Nodes which cannot
+     * reach each other inside the cluster have no edge.
+     */
+    private final int[][] edgeStart;
+    /** Tile an edge leads to */
+    private final int[][] edgeTarget;
+    /** Length of an edge (distance inside the cluster) */
+    private final short[][] edgeCost;
+    /** Breadth-first search state used while building */
+    private final int[] distance = new int[CLUSTER_SIZE * CLUSTER_SIZE];
+    private final int[] queue = new int[CLUSTER_SIZE * CLUSTER_SIZE];
+    /** Number of cluster builds so far */
+    private long builds;
+
+    public ClusterGraph(Terrain terrain) {
+        this.width = terrain.getWidth();
+        this.height = terrain.getHeight();
+        this.terrain = terrain;
+        this.clustersX = (this.width + CLUSTER_SIZE - 1) / CLUSTER_SIZE;
+        this.clustersY = (this.height + CLUSTER_SIZE - 1) / CLUSTER_SIZE;
+        this.nodes = new int[this.clustersX * this.clustersY][];
+        this.edgeStart = new int[this.nodes.length][];
+        this.edgeTarget = new int[this.nodes.length][];
+        this.edgeCost = new short[this.nodes.length][];
+        for (int cluster = 0; cluster < this.nodes.length; cluster++)
+            build(cluster);
+    }
+
+    public Terrain getTerrain() { return this.terrain; }
+    public int getClusterCount() { return this.nodes.length; }
+    /** Number of cluster builds so far (including the ones of the constructor) */
+    public long getBuilds() { return this.builds; }
+
+    /** Cluster a tile belongs to */
+    public int getCluster(int tile) {
+        return (tile / this.width / CLUSTER_SIZE) * this.clustersX + (tile % this.width) / CLUSTER_SIZE;
+    }
+
+    /** Tiles of the nodes of a cluster, sorted (do not modify) */
+    public int[] getNodes(int cluster) {
+        return this.nodes[cluster];
+    }
+
+    /** Index of a tile among the nodes of its cluster, or a negative number if it is no node */
+    public int indexOf(int cluster, int tile) {
+        return Arrays.binarySearch(this.nodes[cluster], tile);
+    }
+
+    /** Distance inside the cluster between its i-th and j-th node, or {@link #UNREACHABLE} */
+    public int getDistance(int cluster, int i, int j) {
+        if (i == j)
+            return 0;
+        int[] start = this.edgeStart[cluster];
+        for (int e = start[i]; e < start[i + 1]; e++)
+            if (this.edgeTarget[cluster][e] == this.nodes[cluster][j])
+                return this.edgeCost[cluster][e];
+        return UNREACHABLE;
+    }
+
+    /** First edge of the i-th node of a cluster; its edges end where the ones of the next node start */
+    public int getEdgeStart(int cluster, int i) { return this.edgeStart[cluster][i]; }
+    /** Tile (node) an edge of a cluster leads to */
+    public int getEdgeTarget(int cluster, int edge) { return this.edgeTarget[cluster][edge]; }
+    public int getEdgeCost(int cluster, int edge) { return this.edgeCost[cluster][edge]; }
+
+    /** Approximate number of bytes used by the graph */
+    public long getMemory() {
+        long memory = 32L * this.nodes.length;
+        for (int cluster = 0; cluster < this.nodes.length; cluster++)
+            memory += 4L * (this.nodes[cluster].length + 1) + 6L * this.edgeTarget[cluster].length;
+        return memory;
+    }
+
+    /** Rebuild the clusters a changed tile belongs to or borders on */
+    public void tileChanged(int tile) {
+        int x = tile % this.width;
+        int y = tile / this.width;
+        int cluster = getCluster(tile);
+        build(cluster);
+        if (x % CLUSTER_SIZE == 0 && x > 0)
+            build(cluster - 1);
+        if (x % CLUSTER_SIZE == CLUSTER_SIZE - 1 && x < this.width - 1)
+            build(cluster + 1);
+        if (y % CLUSTER_SIZE == 0 && y > 0)
+            build(cluster - this.clustersX);
+        if (y % CLUSTER_SIZE == CLUSTER_SIZE - 1 && y < this.height - 1)
+            build(cluster + this.clustersX);
+    }
+
+    /**
+     * Breadth-first search inside a cluster.
+     *
+     * @param from tile the search starts at (inside the cluster).
+     * @param distance receives the distance of every tile of the cluster
+     * (indexed by {@link #local(int, int)}), -1 if it cannot be reached.
+     * @param predecessor receives the tile before every reached tile (may be null).
+     * @param queue scratch space, CLUSTER_SIZE * CLUSTER_SIZE entries.
+     */
+    void explore(int cluster, int from, int[] distance, int[] predecessor, int[] queue) {
+        int left = (cluster % this.clustersX) * CLUSTER_SIZE;
+        int top = (cluster / this.clustersX) * CLUSTER_SIZE;
+        int right = Math.min(left + CLUSTER_SIZE, this.width);
+        int bottom = Math.min(top + CLUSTER_SIZE, this.height);
+        Arrays.fill(distance, -1);
+        if (!this.terrain.isWalkable(from))
+            return;
+
+        int head = 0;
+        int tail = 0;
+        distance[local(cluster, from)] = 0;
+        if (predecessor != null)
+            predecessor[local(cluster, from)] = from;
+        queue[tail++] = from;
+        while (head < tail) {
+            int tile = queue[head++];
+            int next = distance[local(cluster, tile)] + 1;
+            int x = tile % this.width;
+            int y = tile / this.width;
+            if (x > left)
+                tail = visit(cluster, tile, tile - 1, next, distance, predecessor, queue, tail);
+            if (x < right - 1)
+                tail = visit(cluster, tile, tile + 1, next, distance, predecessor, queue, tail);
+            if (y > top)
+                tail = visit(cluster, tile, tile - this.width, next, distance, predecessor, queue, tail);
+            if (y < bottom - 1)
+                tail = visit(cluster, tile, tile + this.width, next, distance, predecessor, queue, tail);
+        }
+    }
+
+    /** Index of a tile inside its cluster, for the arrays of {@link #explore} */
+    int local(int cluster, int tile) {
+        int x = tile % this.width - (cluster % this.clustersX) * CLUSTER_SIZE;
+        int y = tile / this.width - (cluster / this.clustersX) * CLUSTER_SIZE;
+        return x + y * CLUSTER_SIZE;
+    }
+
+    private int visit(int cluster, int from, int tile, int distance, int[] distances, int[] predecessor, int[] queue, int tail) {
+        int local = local(cluster, tile);
+        if (distances[local] >= 0 || !this.terrain.isWalkable(tile))
+            return tail;
+        distances[local] = distance;
+        if (predecessor != null)
+            predecessor[local] = from;
+        queue[tail] = tile;
+        return tail + 1;
+    }
+
+    /** Find the nodes of a cluster and the distances between them */
+    private void build(int cluster) {
+        int cx = cluster % this.clustersX;
+        int cy = cluster / this.clustersX;
+        int left = cx * CLUSTER_SIZE;
+        int top = cy * CLUSTER_SIZE;
+        int right = Math.min(left + CLUSTER_SIZE, this.width) - 1;
+        int bottom = Math.min(top + CLUSTER_SIZE, this.height) - 1;
+
+        // Entrances on the four borders; each side of a border finds the same ones
+        int[] found = new int[4 * CLUSTER_SIZE];
+        int count = 0;
+        if (left > 0)
+            count = entrances(left + top * this.width, this.width, bottom - top + 1, -1, found, count);
+        if (right < this.width - 1)
+            count = entrances(right + top * this.width, this.width, bottom - top + 1, 1, found, count);
+        if (top > 0)
+            count = entrances(left + top * this.width, 1, right - left + 1, -this.width, found, count);
+        if (bottom < this.height - 1)
+            count = entrances(left + bottom * this.width, 1, right - left + 1, this.width, found, count);
+        Arrays.sort(found, 0, count);
+        int n = 0;
+        for (int i = 0; i < count; i++)
+            if (n == 0 || found[n - 1] != found[i])
+                found[n++] = found[i];
+        int[] nodes = Arrays.copyOf(found, n);
+
+        int[] start = new int[n + 1];
+        int[] target = new int[n * n];
+        short[] cost = new short[n * n];
+        int edges = 0;
+        for (int i = 0; i < n; i++) {
+            explore(cluster, nodes[i], this.distance, null, this.queue);
+            start[i] = edges;
+            for (int j = 0; j < n; j++) {
+                int d = this.distance[local(cluster, nodes[j])];
+                if (j != i && d >= 0) {
+                    target[edges] = nodes[j];
+                    cost[edges++] = (short) d;
+                }
+            }
+        }
+        start[n] = edges;
+        this.edgeStart[cluster] = start;
+        this.edgeTarget[cluster] = Arrays.copyOf(target, edges);
+        this.edgeCost[cluster] = Arrays.copyOf(cost, edges);
+        this.nodes[cluster] = nodes;
+        this.builds++;
+    }
+
+    /**
+     * Find the entrances along one border of a cluster: runs of tiles which are
+     * walkable on both sides of the border. Narrow runs get a node in the
+     * middle, wide ones a node at both ends.
+     *
+     * @param first first tile of the border inside the cluster.
+     * @param step distance between the tiles along the border.
+     * @param length number of tiles along the border.
+     * @param across distance to the tile on the other side of the border.
+     * @return the new number of tiles in found.
+     */
+    private int entrances(int first, int step, int length, int across, int[] found, int count) {
+        int run = -1;
+        for (int i = 0; i <= length; i++) {
+            int tile = first + i * step;
+            boolean open = i < length && this.terrain.isWalkable(tile) && this.terrain.isWalkable(tile + across);
+            if (open && run < 0) {
+                run = i;
+            } else if (!open && run >= 0) {
+                int end = i - 1;
+                if (end - run + 1 >= WIDE_ENTRANCE) {
+                    found[count++] = first + run * step;
+                    found[count++] = first + end * step;
+                } else {
+                    found[count++] = first + ((run + end) / 2) * step;
+                }
+                run = -1;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,131 @@
+package model;
+
+/**
+ * The parts of a map which are connected by walkable tiles. A tracker in
+ * one part can never reach a player in another; the world sees that at once
+ * instead of letting the search use up its budget (see
+ * {@link Terrain#getComponents()}).
+ *
+ * The parts are kept in a union-find structure: tiles point towards the root
+ * of their part, which stores the part's size. After it is built every tile
+ * points straight at its root. A tile which becomes walkable joins the parts
+ * around it; a new wall may split its part, so the structure is built again
+ * (one pass over the map). Lookups do not change the structure, so several
+ * threads may look up at the same time while the map does not change.
+ */
+public class Components {
+
+    private final Terrain terrain;
+    private final int width;
+    /** Parent + 1 of a walkable tile, or -size if it is the root of its part, 0 for walls */
+    private final int[] parent;
+    private int count;
+    /** Number of times the structure was built (the first time included) */
+    private int builds;
+
+    public Components(Terrain terrain) {
+        this.terrain = terrain;
+        this.width = terrain.getWidth();
+        this.parent = new int[terrain.getSize()];
+        build();
+    }
+
+    public Terrain getTerrain() { return this.terrain; }
+    /** Number of connected parts of the map */
+    public int getCount() { return this.count; }
+    public int getBuilds() { return this.builds; }
+    /** Approximate number of bytes used */
+    public long getMemory() { return 4L * this.parent.length; }
+
+    /** Are both tiles walkable and connected by a path? */
+    public boolean isConnected(int a, int b) {
+        return this.terrain.isWalkable(a) && this.terrain.isWalkable(b) && find(a) == find(b);
+    }
+
+    /** The part of the map the tile belongs to (the tile at its root), -1 for walls */
+    public int getComponent(int tile) {
+        return this.terrain.isWalkable(tile) ? find(tile) : -1;
+    }
+
+    /** Number of tiles in the part of the map the tile belongs to, 0 for walls */
+    public int getSize(int tile) {
+        return this.terrain.isWalkable(tile) ? -this.parent[find(tile)] : 0;
+    }
+
+    /** Update the parts after the type of a tile changed */
+    void tileChanged(int tile) {
+        if (this.terrain.isWalkable(tile)) {
+            // Already part of the structure if it only changed from one walkable type to another
+            if (this.parent[tile] != 0)
+                return;
+            this.parent[tile] = -1;
+            this.count++;
+            int x = tile % this.width;
+            if (x > 0)
+                join(tile, tile - 1);
+            if (x < this.width - 1)
+                join(tile, tile + 1);
+            if (tile >= this.width)
+                join(tile, tile - this.width);
+            if (tile + this.width < this.parent.length)
+                join(tile, tile + this.width);
+        } else if (this.parent[tile] == -1) {
+            // A part of a single tile disappeared
+            this.parent[tile] = 0;
+            this.count--;
+        } else if (this.parent[tile] != 0) {
+            build();
+        }
+    }
+
+    /** Label all parts from scratch, one pass over the map */
+    private void build() {
+        int height = this.terrain.getHeight();
+        this.count = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < this.width; x++) {
+                int tile = x + y * this.width;
+                if (!this.terrain.isWalkable(tile)) {
+                    this.parent[tile] = 0;
+                    continue;
+                }
+                this.parent[tile] = -1;
+                this.count++;
+                if (x > 0)
+                    join(tile, tile - 1);
+                if (y > 0)
+                    join(tile, tile - this.width);
+            }
+        }
+        // Every tile points at its root
+        for (int tile = 0; tile < this.parent.length; tile++)
+            if (this.parent[tile] > 0)
+                this.parent[tile] = find(tile) + 1;
+        this.builds++;
+    }
+
+    /** Root of a walkable tile's part */
+    private int find(int tile) {
+        while (this.parent[tile] > 0)
+            tile = this.parent[tile] - 1;
+        return tile;
+    }
+
+    /** Join the parts of two tiles (the second one may be a wall), the smaller part is hung below the larger one */
+    private void join(int a, int b) {
+        if (this.parent[b] == 0)
+            return;
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA == rootB)
+            return;
+        if (this.parent[rootA] > this.parent[rootB]) {
+            int swap = rootA;
+            rootA = rootB;
+            rootB = swap;
+        }
+        this.parent[rootA] += this.parent[rootB];
+        this.parent[rootB] = rootA + 1;
+        this.count--;
+    }
+}
@@ -0,0 +1,113 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Distances from every reachable tile to one target tile (usually the player),
+ * computed with a single breadth-first search over the walkable tiles. All
+ * trackers chasing the same target share one field: a tracker simply steps to
+ * the neighbour with the lowest distance, which costs the same no matter how
+ * many trackers there are.
+ */
+public class DistanceField {
+
+    /** Distance of tiles which cannot reach the target */
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final int width;
+    private final int height;
+    /** The map, shared with the world */
+    private final Terrain terrain;
+    /** Distance of each tile to the target (only valid if stamp[tile] == generation) */
+    private final int[] distance;
+    /** Stamp of the computation which reached a tile */
+    private final int[] stamp;
+    /** Breadth-first search queue */
+    private final int[] queue;
+    private int generation;
+    private int target = -1;
+
+    public DistanceField(Terrain terrain) {
+        this.width = terrain.getWidth();
+        this.height = terrain.getHeight();
+        this.terrain = terrain;
+        this.distance = new int[terrain.getSize()];
+        this.stamp = new int[terrain.getSize()];
+        this.queue = new int[terrain.getSize()];
+    }
+
+    public int getTarget() { return this.target; }
+
+    /** Distance of a tile to the target or {@link #UNREACHABLE} */
+    public int getDistance(int tile) {
+        return this.stamp[tile] == this.generation ? this.distance[tile] : UNREACHABLE;
+    }
+
+    /**
+     * Recompute the distances to the given tile.
+     *
+     * @param target tile all distances are measured to.
+     */
+    public void compute(int target) {
+        if (++this.generation == 0) {
+            Arrays.fill(this.stamp, 0);
+            this.generation = 1;
+        }
+        this.target = target;
+        if (!this.terrain.isWalkable(target))
+            return;
+
+        int head = 0;
+        int tail = 0;
+        this.stamp[target] = this.generation;
+        this.distance[target] = 0;
+        this.queue[tail++] = target;
+        while (head < tail) {
+            int tile = this.queue[head++];
+            int next = this.distance[tile] + 1;
+            int x = tile % this.width;
+            if (x > 0)
+                tail = visit(tile - 1, next, tail);
+            if (x < this.width - 1)
+                tail = visit(tile + 1, next, tail);
+            if (tile >= this.width)
+                tail = visit(tile - this.width, next, tail);
+            if (tile < this.width * (this.height - 1))
+                tail = visit(tile + this.width, next, tail);
+        }
+    }
+
+    /**
+     * Returns the neighbour of a tile which is closest to the target, or the
+     * tile itself if no neighbour is closer.
+     */
+    public int nextStep(int tile) {
+        int best = tile;
+        int bestDistance = getDistance(tile);
+        int x = tile % this.width;
+        if (x > 0 && getDistance(tile - 1) < bestDistance) {
+            best = tile - 1;
+            bestDistance = getDistance(best);
+        }
+        if (x < this.width - 1 && getDistance(tile + 1) < bestDistance) {
+            best = tile + 1;
+            bestDistance = getDistance(best);
+        }
+        if (tile >= this.width && getDistance(tile - this.width) < bestDistance) {
+            best = tile - this.width;
+            bestDistance = getDistance(best);
+        }
+        if (tile < this.width * (this.height - 1) && getDistance(tile + this.width) < bestDistance)
+            best = tile + this.width;
+        return best;
+    }
+
+    private int visit(int tile, int distance, int tail) {
+        if (!this.terrain.isWalkable(tile) || this.stamp[tile] == this.generation)
+            return tail;
+        this.stamp[tile] = this.generation;
+        this.distance[tile] = distance;
+        this.queue[tail] = tile;
+        return tail + 1;
+    }
+}
@@ -0,0 +1,254 @@
+package model;
+
+/**
+ * A tracker's planner for hierarchical pathfinding (HPA*). The search runs on
+ * the {@link ClusterGraph} shared by all trackers: the tracker's tile and the
+ * player's tile are connected to the nodes of their clusters, then A* finds
+ * the shortest way along the nodes. Only the stretch the tracker walks next is
+ * turned into tiles, one edge of the abstract path at a time, so a turn costs a
+ * search over a few nodes per cluster plus a search inside one cluster.
+ *
+ * The paths are near optimal: inside a cluster they are exact, but they have
+ * to pass the clusters through their entrances.
+ *
+ * With {@link Landmarks} the search is guided by the landmark bound as well
+ * as the Manhattan distance.
+ */
+public class HierarchicalPlanner {
+
+    private static final int AREA = ClusterGraph.CLUSTER_SIZE * ClusterGraph.CLUSTER_SIZE;
+
+    private final int width;
+    private final ClusterGraph graph;
+    private final Terrain terrain;
+    /** Nodes waiting to be expanded */
+    private final IndexedHeap openList;
+    /** Distance of a node from the start (only valid if stamp[node] == generation) */
+    private final CellArray g;
+    /** Node before a node on the best known path */
+    private final CellArray parent;
+    private final CellArray stamp;
+    private int generation;
+    /** Landmark tables (null: Manhattan distances only) */
+    private Landmarks landmarks;
+    /** Distances of the destination from the landmarks, null if the current search does not use them */
+    private int[] destinationLandmarks;
+
+    /** Distances and predecessors inside the start and the destination cluster */
+    private final int[] startDistance = new int[AREA];
+    private final int[] startPredecessor = new int[AREA];
+    private final int[] destinationDistance = new int[AREA];
+    private final int[] distance = new int[AREA];
+    private final int[] predecessor = new int[AREA];
+    private final int[] queue = new int[AREA];
+
+    private int start;
+    private int destination;
+    /** Abstract path: start, nodes, destination (empty if there is none) */
+    private int[] path = new int[16];
+    private int pathLength;
+    /** Edge of the abstract path the tiles in segment belong to */
+    private int edge;
+    /** Tiles of the current edge, walked from segmentIndex on */
+    private int[] segment = new int[AREA];
+    private int segmentLength;
+    private int segmentIndex;
+    /** Tile the tracker is expected to stand on */
+    private int position;
+
+    /** Number of nodes expanded by the last search */
+    private int expanded;
+
+    public HierarchicalPlanner(ClusterGraph graph) {
+        this.graph = graph;
+        this.terrain = graph.getTerrain();
+        this.width = this.terrain.getWidth();
+        this.openList = new IndexedHeap(this.terrain.getSize());
+        this.g = new CellArray(this.terrain.getSize());
+        this.parent = new CellArray(this.terrain.getSize());
+        this.stamp = new CellArray(this.terrain.getSize());
+    }
+
+    public ClusterGraph getGraph() { return this.graph; }
+    public int getExpanded() { return this.expanded; }
+    /** Most nodes waiting in the open list at once during the last search */
+    public int getOpenListPeak() { return this.openList.getPeakSize(); }
+    public boolean getDestinationReached() { return this.pathLength > 0; }
+    /** Length of the abstract path (start, nodes, destination), 0 if there is none */
+    public int getPathLength() { return this.pathLength; }
+    public Landmarks getLandmarks() { return this.landmarks; }
+
+    /** Use landmark tables of the map from the next search on (null to go back to Manhattan distances) */
+    public void setLandmarks(Landmarks landmarks) {
+        this.landmarks = landmarks;
+    }
+
+    /** Approximate number of bytes used by the search state */
+    public long getMemory() {
+        return this.openList.getMemory() + this.g.getMemory() + this.parent.getMemory() + this.stamp.getMemory() + 4L * (6 * AREA + this.path.length);
+    }
+
+    /**
+     * Find the way from the tracker's tile to the player.
+     *
+     * @param maxExpansions how many nodes the search may expand at most.
+     * @return the number of nodes expanded.
+     */
+    public int plan(int start, int destination, int maxExpansions) {
+        this.start = start;
+        this.destination = destination;
+        this.position = start;
+        this.pathLength = 0;
+        this.segmentLength = 0;
+        this.segmentIndex = 0;
+        this.edge = 0;
+        this.expanded = 0;
+        if (!this.terrain.isWalkable(start) || !this.terrain.isWalkable(destination))
+            return 0;
+
+        int startCluster = this.graph.getCluster(start);
+        int destinationCluster = this.graph.getCluster(destination);
+        this.graph.explore(startCluster, start, this.startDistance, this.startPredecessor, this.queue);
+        if (startCluster == destinationCluster && this.startDistance[this.graph.local(startCluster, destination)] >= 0) {
+            // The player is in reach without leaving the cluster
+            this.path[0] = start;
+            this.path[1] = destination;
+            this.pathLength = 2;
+            refine();
+            return 0;
+        }
+        this.graph.explore(destinationCluster, destination, this.destinationDistance, null, this.queue);
+        if (this.landmarks != null && this.landmarks.isValid())
+            this.destinationLandmarks = this.landmarks.getDistances(destination, this.destinationLandmarks);
+        else
+            this.destinationLandmarks = null;
+
+        if (++this.generation == 0) {
+            this.stamp.clear();
+            this.generation = 1;
+        }
+        this.openList.clear();
+        int[] nodes = this.graph.getNodes(startCluster);
+        for (int i = 0; i < nodes.length; i++) {
+            int d = this.startDistance[this.graph.local(startCluster, nodes[i])];
+            if (d >= 0)
+                relax(nodes[i], start, d);
+        }
+
+        // Best way to the player found so far: the node it leaves its cluster from
+        int best = Integer.MAX_VALUE;
+        int bestNode = -1;
+        while (!this.openList.isEmpty() && this.expanded < maxExpansions && (this.openList.peekKey() >>> 32) < best) {
+            int node = this.openList.poll();
+            this.expanded++;
+            int cost = this.g.get(node);
+            int cluster = this.graph.getCluster(node);
+            if (cluster == destinationCluster) {
+                int d = this.destinationDistance[this.graph.local(cluster, node)];
+                if (d >= 0 && cost + d < best) {
+                    best = cost + d;
+                    bestNode = node;
+                }
+            }
+
+            // Other nodes of the cluster
+            int i = this.graph.indexOf(cluster, node);
+            int end = this.graph.getEdgeStart(cluster, i + 1);
+            for (int e = this.graph.getEdgeStart(cluster, i); e < end; e++)
+                relax(this.graph.getEdgeTarget(cluster, e), node, cost + this.graph.getEdgeCost(cluster, e));
+            // The other side of the entrances the node belongs to
+            int x = node % this.width;
+            if (x > 0)
+                cross(node, node - 1, cost);
+            if (x < this.width - 1)
+                cross(node, node + 1, cost);
+            if (node >= this.width)
+                cross(node, node - this.width, cost);
+            if (node < this.terrain.getSize() - this.width)
+                cross(node, node + this.width, cost);
+        }
+        if (bestNode < 0)
+            return this.expanded;
+
+        // Abstract path from the destination back to the start
+        int length = 2;
+        for (int node = bestNode; node != start; node = this.parent.get(node))
+            length++;
+        if (this.path.length < length)
+            this.path = new int[length];
+        this.pathLength = length;
+        this.path[length - 1] = destination;
+        int k = length - 2;
+        for (int node = bestNode; node != start; node = this.parent.get(node))
+            this.path[k--] = node;
+        this.path[0] = start;
+        refine();
+        return this.expanded;
+    }
+
+    /**
+     * Returns the tile after {@code from} on the path to the player, or
+     * {@code from} itself if there is no path (or the tracker left it).
+     */
+    public int nextStep(int from) {
+        if (from != this.position || this.pathLength == 0)
+            return from;
+        while (this.segmentIndex == this.segmentLength) {
+            if (++this.edge >= this.pathLength - 1)
+                return from;
+            refine();
+        }
+        this.position = this.segment[this.segmentIndex++];
+        return this.position;
+    }
+
+    /** Turn the current edge of the abstract path into tiles */
+    private void refine() {
+        int a = this.path[this.edge];
+        int b = this.path[this.edge + 1];
+        int cluster = this.graph.getCluster(a);
+        this.segmentLength = 0;
+        this.segmentIndex = 0;
+        if (cluster != this.graph.getCluster(b)) {
+            // Through an entrance: one step
+            this.segment[this.segmentLength++] = b;
+        } else if (this.edge == 0) {
+            // The search from the start has been done already
+            follow(this.startPredecessor, cluster, b, a);
+        } else {
+            this.graph.explore(cluster, a, this.distance, this.predecessor, this.queue);
+            follow(this.predecessor, cluster, b, a);
+        }
+    }
+
+    /** The tiles from {@code from} (exclusive) to {@code to} become the current segment */
+    private void follow(int[] predecessor, int cluster, int to, int from) {
+        for (int tile = to; tile != from; tile = predecessor[this.graph.local(cluster, tile)])
+            this.segmentLength++;
+        int i = this.segmentLength;
+        for (int tile = to; tile != from; tile = predecessor[this.graph.local(cluster, tile)])
+            this.segment[--i] = tile;
+    }
+
+    /** Step from a node across the border of its cluster, if the tile there is a node of the entrance */
+    private void cross(int node, int tile, int cost) {
+        int cluster = this.graph.getCluster(tile);
+        if (cluster != this.graph.getCluster(node) && this.graph.indexOf(cluster, tile) >= 0)
+            relax(tile, node, cost + 1);
+    }
+
+    /** Reach a node from another one with the given cost, if that is better than before */
+    private void relax(int node, int from, int cost) {
+        if (this.stamp.get(node) == this.generation && this.g.get(node) <= cost)
+            return;
+        this.stamp.set(node, this.generation);
+        this.g.set(node, cost);
+        this.parent.set(node, from);
+        int x = node % this.width;
+        int y = node / this.width;
+        int h = Math.abs(x - this.destination % this.width) + Math.abs(y - this.destination / this.width);
+        if (this.destinationLandmarks != null)
+            h = Math.max(h, this.landmarks.lowerBound(node, this.destinationLandmarks));
+        this.openList.update(node, ((long) (cost + h) << 32) | h);
+    }
+}
@@ -0,0 +1,133 @@
+package model;
+
+import java.beans.ConstructorProperties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts non-negative values (durations, node counts) in buckets whose width
+ * grows with the value: eight buckets per power of two, so percentiles are
+ * accurate to about 12 %. Recording is a handful of atomic additions and never
+ * allocates; several threads may record at the same time.
+ */
+public class Histogram {
+
+    /** Buckets per power of two */
+    private static final int SUB_BUCKETS = 8;
+    private static final int SUB_BITS = 3;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /** Count a value (negative values count as 0) */
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        this.buckets.incrementAndGet(bucket(value));
+        this.count.incrementAndGet();
+        this.sum.addAndGet(value);
+        long current = this.max.get();
+        while (value > current && !this.max.compareAndSet(current, value))
+            current = this.max.get();
+    }
+
+    public long getCount() { return this.count.get(); }
+    public long getMax() { return this.max.get(); }
+
+    public double getMean() {
+        long count = this.count.get();
+        return count == 0 ? 0 : (double) this.sum.get() / count;
+    }
+
+    /**
+     * The value which the given share of the recorded values did not exceed
+     * (the upper end of its bucket, at most the largest value recorded).
+     *
+     * @param percentile between 0 and 100.
+     */
+    public long getPercentile(double percentile) {
+        long count = this.count.get();
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += this.buckets.get(i);
+            if (seen >= rank)
+                return Math.min(upperBound(i), getMax());
+        }
+        return getMax();
+    }
+
+    /** Forget all values */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++)
+            this.buckets.set(i, 0);
+        this.count.set(0);
+        this.sum.set(0);
+        this.max.set(0);
+    }
+
+    /**
+     * The count and the main percentiles, multiplied by a scale (e.g. 1e-3 to
+     * turn nanoseconds into microseconds).
+     */
+    public Summary summarize(double scale) {
+        return new Summary(getCount(), getMean() * scale, getPercentile(50) * scale, getPercentile(90) * scale,
+                getPercentile(99) * scale, getMax() * scale);
+    }
+
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /** Largest value which falls into a bucket */
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        long lower = (1L << exponent) | (sub << (exponent - SUB_BITS));
+        return lower + (1L << (exponent - SUB_BITS)) - 1;
+    }
+
+    /** Summary of a histogram, as JMX clients see it */
+    public static class Summary {
+
+        private final long count;
+        private final double mean;
+        private final double p50;
+        private final double p90;
+        private final double p99;
+        private final double max;
+
+        @ConstructorProperties({ "count", "mean", "p50", "p90", "p99", "max" })
+        public Summary(long count, double mean, double p50, double p90, double p99, double max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        public long getCount() { return this.count; }
+        public double getMean() { return this.mean; }
+        public double getP50() { return this.p50; }
+        public double getP90() { return this.p90; }
+        public double getP99() { return this.p99; }
+        public double getMax() { return this.max; }
+
+        @Override
+        public String toString() {
+            return String.format("n=%d mean=%.1f p50=%.1f p90=%.1f p99=%.1f max=%.1f", this.count, this.mean, this.p50, this.p90, this.p99, this.max);
+        }
+    }
+}
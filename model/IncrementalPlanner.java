@@ -0,0 +1,321 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * An incremental planner (D* Lite) which keeps its search tree between turns.
+ * The tree is rooted at the player and every tile knows its distance to the
+ * player, so the tracker moving does not invalidate anything. When the player
+ * moves or a tile changes its type only the affected tiles are updated and the
+ * search continues from there instead of starting over.
+ *
+ * See S. Koenig, M. Likhachev: D* Lite (2002).
+ */
+public class IncrementalPlanner {
+
+    /** Cost of tiles which cannot reach the player */
+    private static final int INFINITY = 1 << 29;
+
+    private final int width;
+    private final int height;
+    /** The map, shared with the world */
+    private final Terrain terrain;
+    /** Distance to the player as far as the search knows (only valid if stamp[tile] == generation) */
+    private final CellArray g;
+    /** One-step lookahead of g (only valid if stamp[tile] == generation) */
+    private final CellArray rhs;
+    /** Stamp of the search tree a tile belongs to */
+    private final CellArray stamp;
+    /** Tiles which are locally inconsistent */
+    private final IndexedHeap openList;
+    private int generation;
+
+    /** Tiles changed since the last call of plan() */
+    private int[] changedTiles = new int[16];
+    private int changedCount;
+
+    private boolean initialised;
+    private int start;
+    private int lastStart;
+    private int destination;
+    /** Heuristic offset accumulated while the tracker moves (D* Lite: km) */
+    private int keyModifier;
+
+    /** Number of tiles expanded by the last call of plan() */
+    private int expanded;
+    /** Number of tiles expanded since the search tree was built */
+    private long totalExpanded;
+    /** Number of tiles expanded to build the search tree from scratch (-1 while it is being built) */
+    private int initialExpanded;
+
+    public IncrementalPlanner(Terrain terrain) {
+        this.width = terrain.getWidth();
+        this.height = terrain.getHeight();
+        this.terrain = terrain;
+        this.g = new CellArray(terrain.getSize());
+        this.rhs = new CellArray(terrain.getSize());
+        this.stamp = new CellArray(terrain.getSize());
+        this.openList = new IndexedHeap(terrain.getSize());
+    }
+
+    public int getExpanded() { return this.expanded; }
+    /** Largest size of the open list since the search tree was built (it is kept between turns) */
+    public int getOpenListPeak() { return this.openList.getPeakSize(); }
+    public long getTotalExpanded() { return this.totalExpanded; }
+    public int getInitialExpanded() { return this.initialExpanded; }
+    public boolean getDestinationReached() { return this.initialised && getRhs(this.start) < INFINITY; }
+
+    /** Approximate number of bytes used by the search tree */
+    public long getMemory() {
+        return this.openList.getMemory() + this.g.getMemory() + this.rhs.getMemory() + this.stamp.getMemory();
+    }
+
+    /** Is the search tree up to date for the tracker's tile? */
+    public boolean getFinished() {
+        return this.openList.isEmpty() || (this.openList.peekKey() >= key(this.start) && getRhs(this.start) <= getG(this.start));
+    }
+
+    /** Distance from a tile to the player, or -1 if it is not known (exact for the tracker's tile once the search is finished) */
+    public int getDistance(int tile) {
+        int distance = getRhs(tile);
+        return distance < INFINITY ? distance : -1;
+    }
+
+    /** Throw the search tree away, the next call of plan() starts from scratch. */
+    public void reset() {
+        this.initialised = false;
+        this.changedCount = 0;
+    }
+
+    /** Remember that the type of a tile has changed, the tree is repaired on the next call of plan(). */
+    public void tileChanged(int tile) {
+        if (!this.initialised)
+            return;
+        if (this.changedCount == this.changedTiles.length)
+            this.changedTiles = Arrays.copyOf(this.changedTiles, this.changedCount * 2);
+        this.changedTiles[this.changedCount++] = tile;
+    }
+
+    /**
+     * Bring the search tree up to date and continue the search.
+     *
+     * @param start tile the tracker is standing on.
+     * @param destination tile of the player.
+     * @param maxExpansions maximum number of tiles to expand.
+     * @return number of tiles expanded.
+     */
+    public int plan(int start, int destination, int maxExpansions) {
+        if (!this.initialised) {
+            initialise(start, destination);
+        } else {
+            // Tracker moved: keep the keys comparable instead of re-sorting the open list
+            this.start = start;
+            this.keyModifier += heuristic(this.lastStart, start);
+            this.lastStart = start;
+
+            for (int i = 0; i < this.changedCount; i++) {
+                int tile = this.changedTiles[i];
+                updateRhs(tile);
+                int x = tile % this.width;
+                if (x > 0)
+                    updateRhs(tile - 1);
+                if (x < this.width - 1)
+                    updateRhs(tile + 1);
+                if (tile >= this.width)
+                    updateRhs(tile - this.width);
+                if (tile < this.width * (this.height - 1))
+                    updateRhs(tile + this.width);
+            }
+            this.changedCount = 0;
+
+            // Player moved: the old tile loses its root status, the new one gains it
+            if (destination != this.destination) {
+                int previous = this.destination;
+                this.destination = destination;
+                updateRhs(previous);
+                updateRhs(destination);
+            }
+        }
+
+        this.expanded = computeShortestPath(maxExpansions);
+        this.totalExpanded += this.expanded;
+        if (this.initialExpanded < 0 && getFinished())
+            this.initialExpanded = (int) this.totalExpanded;
+        return this.expanded;
+    }
+
+    /**
+     * Returns the walkable neighbour of a tile which is closest to the player,
+     * or the tile itself if the player cannot be reached.
+     */
+    public int nextStep(int tile) {
+        int best = tile;
+        int bestCost = INFINITY;
+        int x = tile % this.width;
+        if (x > 0 && getG(tile - 1) < bestCost) {
+            best = tile - 1;
+            bestCost = getG(best);
+        }
+        if (x < this.width - 1 && getG(tile + 1) < bestCost) {
+            best = tile + 1;
+            bestCost = getG(best);
+        }
+        if (tile >= this.width && getG(tile - this.width) < bestCost) {
+            best = tile - this.width;
+            bestCost = getG(best);
+        }
+        if (tile < this.width * (this.height - 1) && getG(tile + this.width) < bestCost)
+            best = tile + this.width;
+        return best;
+    }
+
+    private void initialise(int start, int destination) {
+        if (++this.generation == 0) {
+            this.stamp.clear();
+            this.generation = 1;
+        }
+        this.openList.clear();
+        this.changedCount = 0;
+        this.start = start;
+        this.lastStart = start;
+        this.destination = destination;
+        this.keyModifier = 0;
+        this.totalExpanded = 0;
+        this.initialised = true;
+        if (this.terrain.isWalkable(destination)) {
+            setRhs(destination, 0);
+            this.openList.add(destination, key(destination));
+        }
+        this.initialExpanded = -1;
+    }
+
+    private int computeShortestPath(int maxExpansions) {
+        int count = 0;
+        while (count < maxExpansions && !this.openList.isEmpty()
+                && (this.openList.peekKey() < key(this.start) || getRhs(this.start) > getG(this.start))) {
+            int tile = this.openList.peek();
+            long oldKey = this.openList.peekKey();
+            long newKey = key(tile);
+            if (oldKey < newKey) {
+                this.openList.update(tile, newKey);
+                continue;
+            }
+            count++;
+            int oldG = getG(tile);
+            if (oldG > getRhs(tile)) {
+                // Overconsistent: the tile got closer to the player
+                setG(tile, getRhs(tile));
+                this.openList.poll();
+                relaxNeighbours(tile, getG(tile) + 1);
+            } else {
+                // Underconsistent: the tile got further away, its neighbours may have used it
+                setG(tile, INFINITY);
+                updateVertex(tile);
+                updateNeighboursOf(tile, oldG + 1);
+            }
+        }
+        return count;
+    }
+
+    /** A tile got cheaper: its neighbours may reach the player through it. */
+    private void relaxNeighbours(int tile, int cost) {
+        int x = tile % this.width;
+        if (x > 0)
+            relax(tile - 1, cost);
+        if (x < this.width - 1)
+            relax(tile + 1, cost);
+        if (tile >= this.width)
+            relax(tile - this.width, cost);
+        if (tile < this.width * (this.height - 1))
+            relax(tile + this.width, cost);
+    }
+
+    private void relax(int tile, int cost) {
+        if (!this.terrain.isWalkable(tile) || tile == this.destination || cost >= getRhs(tile))
+            return;
+        setRhs(tile, cost);
+        updateVertex(tile);
+    }
+
+    /** A tile got more expensive: neighbours which used it have to look again. */
+    private void updateNeighboursOf(int tile, int oldCost) {
+        int x = tile % this.width;
+        if (x > 0 && getRhs(tile - 1) == oldCost)
+            updateRhs(tile - 1);
+        if (x < this.width - 1 && getRhs(tile + 1) == oldCost)
+            updateRhs(tile + 1);
+        if (tile >= this.width && getRhs(tile - this.width) == oldCost)
+            updateRhs(tile - this.width);
+        if (tile < this.width * (this.height - 1) && getRhs(tile + this.width) == oldCost)
+            updateRhs(tile + this.width);
+    }
+
+    /** Recompute the lookahead of a tile from its neighbours and requeue it if necessary. */
+    private void updateRhs(int tile) {
+        int best = INFINITY;
+        if (tile == this.destination && this.terrain.isWalkable(tile)) {
+            best = 0;
+        } else if (this.terrain.isWalkable(tile)) {
+            int x = tile % this.width;
+            if (x > 0)
+                best = Math.min(best, costThrough(tile - 1));
+            if (x < this.width - 1)
+                best = Math.min(best, costThrough(tile + 1));
+            if (tile >= this.width)
+                best = Math.min(best, costThrough(tile - this.width));
+            if (tile < this.width * (this.height - 1))
+                best = Math.min(best, costThrough(tile + this.width));
+        }
+        setRhs(tile, Math.min(best, INFINITY));
+        updateVertex(tile);
+    }
+
+    /** Cost of reaching the player through a neighbouring tile */
+    private int costThrough(int tile) {
+        return this.terrain.isWalkable(tile) ? getG(tile) + 1 : INFINITY;
+    }
+
+    private void updateVertex(int tile) {
+        if (getG(tile) != getRhs(tile))
+            this.openList.update(tile, key(tile));
+        else
+            this.openList.remove(tile);
+    }
+
+    /** D* Lite key of a tile: [min(g, rhs) + h + km; min(g, rhs)] packed into one long */
+    private long key(int tile) {
+        long cost = Math.min(getG(tile), getRhs(tile));
+        long primary = Math.min(cost + heuristic(this.start, tile) + this.keyModifier, Integer.MAX_VALUE);
+        return (primary << 32) | cost;
+    }
+
+    private int heuristic(int a, int b) {
+        return Math.abs(a % this.width - b % this.width) + Math.abs(a / this.width - b / this.width);
+    }
+
+    private int getG(int tile) {
+        return this.stamp.get(tile) == this.generation ? this.g.get(tile) : INFINITY;
+    }
+
+    private int getRhs(int tile) {
+        return this.stamp.get(tile) == this.generation ? this.rhs.get(tile) : INFINITY;
+    }
+
+    private void setG(int tile, int value) {
+        touch(tile);
+        this.g.set(tile, value);
+    }
+
+    private void setRhs(int tile, int value) {
+        touch(tile);
+        this.rhs.set(tile, value);
+    }
+
+    private void touch(int tile) {
+        if (this.stamp.get(tile) != this.generation) {
+            this.stamp.set(tile, this.generation);
+            this.g.set(tile, INFINITY);
+            this.rhs.set(tile, INFINITY);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of cell indices with decrease-key support. Keys are kept
+ * in flat arrays next to the heap and the position of every cell inside the
+ * heap in a {@link CellArray}, so no objects are allocated per entry and the
+ * memory used grows with the number of cells that have been in the heap.
+ * Cells with equal keys are returned in insertion order (this matches the
+ * linear scan over the open list the trackers used to do).
+ */
+public class IndexedHeap {
+
+    /** Cells ordered as a binary heap */
+    private int[] heap;
+    /** Key of the cell at a heap position */
+    private long[] keys;
+    /** Insertion number of the cell at a heap position (tie breaker for equal keys) */
+    private int[] orders;
+    /** Number of cells in the heap */
+    private int size;
+    /** Position of a cell inside the heap (only valid if heap[position] == cell) */
+    private final CellArray position;
+    /** Next insertion number */
+    private int nextOrder;
+    /** Largest size since the last clear */
+    private int peakSize;
+
+    /**
+     * Creates a heap for cells in the range [0, cells).
+     *
+     * @param cells number of cells that may be stored in the heap.
+     */
+    public IndexedHeap(int cells) {
+        int capacity = Math.min(Math.max(cells, 1), 256);
+        this.heap = new int[capacity];
+        this.keys = new long[capacity];
+        this.orders = new int[capacity];
+        this.position = new CellArray(cells);
+    }
+
+    public int size() { return this.size; }
+    /** Largest number of cells the heap held at once since it was last cleared */
+    public int getPeakSize() { return this.peakSize; }
+    public boolean isEmpty() { return this.size == 0; }
+    public int peek() { return this.heap[0]; }
+    public long peekKey() { return this.keys[0]; }
+
+    /** Is the cell currently in the heap? */
+    public boolean contains(int cell) {
+        int i = this.position.get(cell);
+        return i < this.size && this.heap[i] == cell;
+    }
+
+    /** Key of a cell in the heap */
+    public long getKey(int cell) {
+        return this.keys[this.position.get(cell)];
+    }
+
+    /** Remove all cells. Runs in constant time. */
+    public void clear() {
+        this.size = 0;
+        this.nextOrder = 0;
+        this.peakSize = 0;
+    }
+
+    /** Approximate number of bytes used by the heap */
+    public long getMemory() {
+        return 16L * this.heap.length + this.position.getMemory();
+    }
+
+    /** Insert a cell which is not yet in the heap. */
+    public void add(int cell, long key) {
+        if (this.size == this.heap.length) {
+            this.heap = Arrays.copyOf(this.heap, this.size * 2);
+            this.keys = Arrays.copyOf(this.keys, this.size * 2);
+            this.orders = Arrays.copyOf(this.orders, this.size * 2);
+        }
+        int i = this.size++;
+        if (this.size > this.peakSize)
+            this.peakSize = this.size;
+        this.heap[i] = cell;
+        this.keys[i] = key;
+        this.orders[i] = this.nextOrder++;
+        siftUp(i);
+    }
+
+    /** Insert the cell or change its key if it is already in the heap (decrease- or increase-key). */
+    public void update(int cell, long key) {
+        if (!contains(cell)) {
+            add(cell, key);
+            return;
+        }
+        int i = this.position.get(cell);
+        long old = this.keys[i];
+        this.keys[i] = key;
+        if (key < old)
+            siftUp(i);
+        else
+            siftDown(i);
+    }
+
+    /** Remove and return the cell with the smallest key. */
+    public int poll() {
+        int top = this.heap[0];
+        removeAt(0);
+        return top;
+    }
+
+    /** Remove the cell if it is in the heap. */
+    public void remove(int cell) {
+        if (contains(cell))
+            removeAt(this.position.get(cell));
+    }
+
+    private void removeAt(int i) {
+        int last = --this.size;
+        if (i == last)
+            return;
+        int cell = this.heap[last];
+        move(last, i);
+        siftDown(i);
+        siftUp(this.position.get(cell));
+    }
+
+    /** Is the entry at heap position a smaller than the one at b? */
+    private boolean less(int a, int b) {
+        return this.keys[a] < this.keys[b] || (this.keys[a] == this.keys[b] && this.orders[a] < this.orders[b]);
+    }
+
+    private void move(int from, int to) {
+        this.heap[to] = this.heap[from];
+        this.keys[to] = this.keys[from];
+        this.orders[to] = this.orders[from];
+        this.position.set(this.heap[to], to);
+    }
+
+    private void siftUp(int i) {
+        int cell = this.heap[i];
+        long key = this.keys[i];
+        int order = this.orders[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (key > this.keys[parent] || (key == this.keys[parent] && order > this.orders[parent]))
+                break;
+            move(parent, i);
+            i = parent;
+        }
+        this.heap[i] = cell;
+        this.keys[i] = key;
+        this.orders[i] = order;
+        this.position.set(cell, i);
+    }
+
+    private void siftDown(int i) {
+        int cell = this.heap[i];
+        long key = this.keys[i];
+        int order = this.orders[i];
+        int half = this.size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < this.size && less(child + 1, child))
+                child++;
+            if (key < this.keys[child] || (key == this.keys[child] && order < this.orders[child]))
+                break;
+            move(child, i);
+            i = child;
+        }
+        this.heap[i] = cell;
+        this.keys[i] = key;
+        this.orders[i] = order;
+        this.position.set(cell, i);
+    }
+}
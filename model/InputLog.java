@@ -0,0 +1,287 @@
+package model;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * A recorded game: the commands a world played (moves, standing still,
+ * restarts and changes of the difficulty) and hashes of the states they led
+ * to, written by an {@link InputRecorder}. The world uses no random numbers,
+ * so a new world on the same map with the same settings goes through the
+ * same states when it plays the same commands; {@link #replay(World)} checks
+ * that after every run of commands.
+ *
+ * The file starts with the magic "LBIN" and the version, the map (where it
+ * was loaded from, width, height and the checksum of its tile types), the
+ * world's settings (start, destination, difficulty, planner, maximum number
+ * of trackers, landmarks, path cache entries), the seed of the moves (0 if a
+ * person played) and the hash of the state before the first command. Then
+ * come the runs of equal commands: the number of commands << 3 | the command,
+ * followed by 4 bytes of a hash chained over the states after each command.
+ * Apart from the hashes all numbers are varints (7 bits per byte, lowest
+ * first, the seed zigzag encoded), so a key held down costs a few bytes.
+ *
+ * Every state goes into the chained hash, but the hash is only written at
+ * the end of a run: a replay which leaves the recorded game is caught at the
+ * end of the run, and reported as within its commands. Runs are cut after
+ * {@link #MAX_RUN} commands so that holding a key or standing still for long
+ * still pins a divergence down to a few seconds of play; a hash per command
+ * would make the log about five times as large.
+ */
+public class InputLog {
+
+    /** Commands 1 to 4 move the player (see {@link World#movePlayer(int)}) */
+    public static final int STAND_STILL = 0;
+    public static final int RESTART = 5;
+    public static final int HARDER = 6;
+    public static final int EASIER = 7;
+
+    /** "LBIN" */
+    static final int MAGIC = 0x4C42494E;
+    static final int VERSION = 1;
+    static final int COMMAND_BITS = 3;
+    /** Most commands written as one run (longer runs of the same command are split) */
+    static final int MAX_RUN = 64;
+
+    private final String map;
+    private final int width;
+    private final int height;
+    private final int checksum;
+    private final int start;
+    private final int destination;
+    private final int difficulty;
+    private final Planner planner;
+    private final int maxTrackers;
+    private final int landmarks;
+    private final int cache;
+    private final long seed;
+    private final int initialHash;
+
+    /** Runs of equal commands and the chained hash after each run */
+    private int[] commands = new int[64];
+    private int[] counts = new int[64];
+    private int[] hashes = new int[64];
+    private int runs;
+    private long length;
+    /** Did the file end in the middle of a run (the game was not closed properly)? */
+    private boolean truncated;
+
+    private InputLog(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not an input log");
+        int version = (int) readVarint(in);
+        if (version != VERSION)
+            throw new IOException("Unsupported input log version " + version);
+        this.map = readString(in);
+        this.width = (int) readVarint(in);
+        this.height = (int) readVarint(in);
+        this.checksum = in.readInt();
+        this.start = (int) readVarint(in);
+        this.destination = (int) readVarint(in);
+        this.difficulty = (int) readVarint(in);
+        try {
+            this.planner = Planner.valueOf(readString(in));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown planner in input log", e);
+        }
+        this.maxTrackers = (int) readVarint(in);
+        this.landmarks = (int) readVarint(in);
+        this.cache = (int) readVarint(in);
+        long seed = readVarint(in);
+        this.seed = (seed >>> 1) ^ -(seed & 1);
+        this.initialHash = in.readInt();
+    }
+
+    /** Reads a whole log into memory, so a replay does not wait for the disk */
+    public static InputLog read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            InputLog log = new InputLog(in);
+            while (true) {
+                in.mark(1);
+                if (in.read() < 0)
+                    break;
+                in.reset();
+                long run;
+                int hash;
+                try {
+                    run = readVarint(in);
+                    hash = in.readInt();
+                } catch (EOFException e) {
+                    log.truncated = true;
+                    break;
+                }
+                int command = (int) run & ((1 << COMMAND_BITS) - 1);
+                long count = run >>> COMMAND_BITS;
+                if (count == 0 || count > Integer.MAX_VALUE)
+                    throw new IOException("Invalid run of " + count + " commands");
+                log.add(command, (int) count, hash);
+            }
+            return log;
+        }
+    }
+
+    private void add(int command, int count, int hash) {
+        if (this.runs == this.commands.length) {
+            this.commands = Arrays.copyOf(this.commands, 2 * this.runs);
+            this.counts = Arrays.copyOf(this.counts, 2 * this.runs);
+            this.hashes = Arrays.copyOf(this.hashes, 2 * this.runs);
+        }
+        this.commands[this.runs] = command;
+        this.counts[this.runs] = count;
+        this.hashes[this.runs] = hash;
+        this.runs++;
+        this.length += count;
+    }
+
+    /** Where the map was loaded from, empty for the map built into the game */
+    public String getMap() { return this.map; }
+    public int getWidth() { return this.width; }
+    public int getHeight() { return this.height; }
+    public int getChecksum() { return this.checksum; }
+    public int getStart() { return this.start; }
+    public int getDestination() { return this.destination; }
+    public int getDifficulty() { return this.difficulty; }
+    public Planner getPlanner() { return this.planner; }
+    public int getMaxTrackers() { return this.maxTrackers; }
+    /** Number of landmarks the searches used, 0 for none */
+    public int getLandmarks() { return this.landmarks; }
+    /** Entries of the path cache, 0 for none */
+    public int getCache() { return this.cache; }
+    /** Seed of the random moves, 0 if a person played */
+    public long getSeed() { return this.seed; }
+    /** Number of commands */
+    public long getLength() { return this.length; }
+    /** Number of runs of equal commands */
+    public int getRuns() { return this.runs; }
+    /** Did the recording stop in the middle of a run (the last one is missing)? */
+    public boolean isTruncated() { return this.truncated; }
+
+    /**
+     * Creates a headless world set up like the recorded one.
+     *
+     * @param landmarks tables for the map with {@link #getLandmarks()} landmarks (null if the game used none).
+     * @throws IllegalArgumentException if the map or the landmarks do not match the recording.
+     */
+    public World createWorld(Terrain terrain, Landmarks landmarks) {
+        if (terrain.getWidth() != this.width || terrain.getHeight() != this.height || terrain.getChecksum() != this.checksum)
+            throw new IllegalArgumentException("The game was recorded on a different map (" + (this.map.isEmpty() ? "built in" : this.map) + ")");
+        if ((landmarks == null ? 0 : landmarks.getCount()) != this.landmarks)
+            throw new IllegalArgumentException("The game was recorded with " + this.landmarks + " landmarks");
+        World world = new World(terrain, this.start, this.destination, this.difficulty);
+        world.setHeadless(true);
+        world.setPlanner(this.planner);
+        world.setMaxTrackers(this.maxTrackers);
+        world.setLandmarks(landmarks);
+        if (this.cache > 0)
+            world.setPathCache(new PathCache(terrain, this.cache));
+        return world;
+    }
+
+    /**
+     * Plays the recorded commands on a world (see {@link #createWorld}) as
+     * fast as it goes.
+     *
+     * @return the number of commands played.
+     * @throws IllegalStateException as soon as the world's state differs from the recorded one.
+     */
+    public long replay(World world) {
+        long chain = world.getSnapshot().getStateHash();
+        if (hash(chain) != this.initialHash)
+            throw new IllegalStateException("The world differs from the recorded one before the first command");
+        long played = 0;
+        for (int i = 0; i < this.runs; i++) {
+            int command = this.commands[i];
+            for (int n = this.counts[i]; n > 0; n--) {
+                apply(world, command);
+                chain = chain(chain, world.getSnapshot().getStateHash());
+            }
+            if (hash(chain) != this.hashes[i])
+                throw new IllegalStateException("The replay differs from the recorded game within commands " + (played + 1)
+                        + " to " + (played + this.counts[i]) + " (command " + command + ", run " + (i + 1) + " of " + this.runs + ")");
+            played += this.counts[i];
+        }
+        return played;
+    }
+
+    /** Lets the world play a command */
+    public static void apply(World world, int command) {
+        switch (command) {
+            case STAND_STILL:
+                world.standStill();
+                break;
+            case RESTART:
+                world.restart();
+                break;
+            case HARDER:
+                world.changeDifficulty(1);
+                break;
+            case EASIER:
+                world.changeDifficulty(-1);
+                break;
+            default:
+                world.movePlayer(command);
+                break;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%dx%d, difficulty %d, %s, seed %d): %d commands in %d runs%s",
+                this.map.isEmpty() ? "built-in map" : this.map, this.width, this.height, this.difficulty, this.planner,
+                this.seed, this.length, this.runs, this.truncated ? ", truncated" : "");
+    }
+
+    /** Adds the state after a command to the hash of the states before */
+    static long chain(long chain, long stateHash) {
+        return (chain ^ stateHash) * 0x9E3779B97F4A7C15L + 1;
+    }
+
+    /** The part of a hash which is written to the log */
+    static int hash(long chain) {
+        return (int) (chain >>> 32);
+    }
+
+    static void writeVarint(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long readVarint(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0)
+                throw new EOFException();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Varint too long");
+    }
+
+    static void writeString(OutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        long length = readVarint(in);
+        if (length > 1 << 16)
+            throw new IOException("String too long");
+        byte[] bytes = new byte[(int) length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,105 @@
+package model;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes the commands a world plays into an {@link InputLog} file, see
+ * {@link World#setRecorder(InputRecorder)}. Equal commands in a row are
+ * collected into one run, which is written when a different command comes
+ * or the recorder is closed, or after {@link InputLog#MAX_RUN} commands; a
+ * game costs a few bytes per key press plus a few per
+ * {@link InputLog#MAX_RUN} turns of holding a key or standing still.
+ */
+public class InputRecorder implements Closeable {
+
+    private final DataOutputStream out;
+    /** Command of the current run, -1 before the first command */
+    private int command = -1;
+    private int count;
+    /** Hash chained over the states after each command */
+    private long chain;
+    private long length;
+
+    /**
+     * Starts a log of the commands the world plays from its current state
+     * (usually right after it was created).
+     *
+     * @param map where the world's map was loaded from, "" for a map built into the game.
+     * @param seed of the random moves, 0 if a person plays.
+     */
+    public InputRecorder(Path file, World world, String map, long seed) throws IOException {
+        Terrain terrain = world.getTerrain();
+        Landmarks landmarks = world.getLandmarks();
+        PathCache cache = world.getPathCache();
+        this.chain = world.getSnapshot().getStateHash();
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+        this.out.writeInt(InputLog.MAGIC);
+        InputLog.writeVarint(this.out, InputLog.VERSION);
+        InputLog.writeString(this.out, map);
+        InputLog.writeVarint(this.out, terrain.getWidth());
+        InputLog.writeVarint(this.out, terrain.getHeight());
+        this.out.writeInt(terrain.getChecksum());
+        InputLog.writeVarint(this.out, world.getStart());
+        InputLog.writeVarint(this.out, world.getDestination());
+        InputLog.writeVarint(this.out, world.getDifficulty());
+        InputLog.writeString(this.out, world.getPlanner().name());
+        InputLog.writeVarint(this.out, world.getMaxTrackers());
+        InputLog.writeVarint(this.out, landmarks == null ? 0 : landmarks.getCount());
+        InputLog.writeVarint(this.out, cache == null ? 0 : cache.getCapacity());
+        InputLog.writeVarint(this.out, (seed << 1) ^ (seed >> 63));
+        this.out.writeInt(InputLog.hash(this.chain));
+    }
+
+    /** Number of commands recorded */
+    public synchronized long getLength() {
+        return this.length;
+    }
+
+    /**
+     * Adds a command the world has just played.
+     *
+     * @param snapshot the state after the command.
+     */
+    synchronized void record(int command, Snapshot snapshot) {
+        if (command < 0 || command > InputLog.EASIER)
+            throw new IllegalArgumentException("Invalid command " + command);
+        if (command != this.command || this.count == InputLog.MAX_RUN) {
+            writeRun();
+            this.command = command;
+            this.count = 0;
+        }
+        this.count++;
+        this.length++;
+        this.chain = InputLog.chain(this.chain, snapshot.getStateHash());
+    }
+
+    /** Writes the current run and the buffered bytes to the file */
+    public synchronized void flush() throws IOException {
+        writeRun();
+        this.command = -1;
+        this.out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        this.out.close();
+    }
+
+    private void writeRun() {
+        if (this.command < 0)
+            return;
+        try {
+            InputLog.writeVarint(this.out, (long) this.count << InputLog.COMMAND_BITS | this.command);
+            this.out.writeInt(InputLog.hash(this.chain));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
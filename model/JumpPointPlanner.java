@@ -0,0 +1,279 @@
+package model;
+
+/**
+ * A tracker's planner using Jump Point Search, an A* for grids where every
+ * step costs the same. Of the many equally short paths through an open area
+ * only one is considered: paths turn from a horizontal into a vertical
+ * direction only where a wall forces them to. The search therefore jumps
+ * along straight lines, without putting the tiles on the way into the open
+ * list, and only stops at tiles where a path may have to turn (jump points).
+ *
+ * On the 4-connected grid of the labyrinth a jump along a row stops beside
+ * the end of a wall (a "forced" neighbour above or below). A jump along a
+ * column stops where a jump along the row from there would find a jump point.
+ * The paths are shortest paths; consecutive jump points lie on a straight
+ * line, which is walked one tile per turn. Jumps along a row look at 64
+ * tiles at a time in the {@link BitGrid} shared by all trackers.
+ *
+ * See D. Harabor, A. Grastien: Online Graph Pruning for Pathfinding on Grid
+ * Maps (2011).
+ */
+public class JumpPointPlanner {
+
+    private final int width;
+    private final int size;
+    private final BitGrid grid;
+    /** The map, shared with the world */
+    private final Terrain terrain;
+    /** Jump points waiting to be expanded */
+    private final IndexedHeap openList;
+    /** Distance of a jump point from the start (only valid if stamp[tile] == generation) */
+    private final CellArray g;
+    /** Jump point before a jump point on the best known path */
+    private final CellArray parent;
+    private final CellArray stamp;
+    private int generation;
+    /** Landmark tables (null: Manhattan distances only) */
+    private Landmarks landmarks;
+    /** Distances of the destination from the landmarks, null if the current search does not use them */
+    private int[] destinationLandmarks;
+
+    private int destination;
+    /** Jump points from the start to the end of the path, walked from pathIndex on */
+    private int[] path = new int[16];
+    private int pathLength;
+    private int pathIndex;
+    /** Tile the tracker is expected to stand on */
+    private int position;
+    private boolean destinationReached;
+
+    /** Jump points expanded by the last search */
+    private int expanded;
+    /** Tiles looked at while jumping by the last search */
+    private int scanned;
+
+    public JumpPointPlanner(BitGrid grid) {
+        this.grid = grid;
+        this.terrain = grid.getTerrain();
+        this.width = this.terrain.getWidth();
+        this.size = this.terrain.getSize();
+        this.openList = new IndexedHeap(this.size);
+        this.g = new CellArray(this.size);
+        this.parent = new CellArray(this.size);
+        this.stamp = new CellArray(this.size);
+    }
+
+    public BitGrid getGrid() { return this.grid; }
+    public int getExpanded() { return this.expanded; }
+    /** Most jump points waiting in the open list at once during the last search */
+    public int getOpenListPeak() { return this.openList.getPeakSize(); }
+    public int getScanned() { return this.scanned; }
+    public boolean getDestinationReached() { return this.destinationReached; }
+    /** Number of jump points on the path (including its start and end), 0 if there is none */
+    public int getPathLength() { return this.pathLength; }
+    public Landmarks getLandmarks() { return this.landmarks; }
+
+    /** Use landmark tables of the map from the next search on (null to go back to Manhattan distances) */
+    public void setLandmarks(Landmarks landmarks) {
+        this.landmarks = landmarks;
+    }
+
+    /** Approximate number of bytes used by the search state */
+    public long getMemory() {
+        return this.openList.getMemory() + this.g.getMemory() + this.parent.getMemory() + this.stamp.getMemory() + 4L * this.path.length;
+    }
+
+    /**
+     * Find the way from the tracker's tile to the player. If the search runs
+     * out of expansions the tracker heads for the jump point expanded last.
+     *
+     * @param maxExpansions how many jump points the search may expand at most.
+     * @return the number of jump points expanded.
+     */
+    public int plan(int start, int destination, int maxExpansions) {
+        this.destination = destination;
+        this.position = start;
+        this.pathLength = 0;
+        this.pathIndex = 0;
+        this.expanded = 0;
+        this.scanned = 0;
+        this.destinationReached = false;
+        if (!this.terrain.isWalkable(start) || !this.terrain.isWalkable(destination))
+            return 0;
+        if (this.landmarks != null && this.landmarks.isValid())
+            this.destinationLandmarks = this.landmarks.getDistances(destination, this.destinationLandmarks);
+        else
+            this.destinationLandmarks = null;
+
+        if (++this.generation == 0) {
+            this.stamp.clear();
+            this.generation = 1;
+        }
+        this.openList.clear();
+        this.stamp.set(start, this.generation);
+        this.g.set(start, 0);
+        this.parent.set(start, start);
+        this.openList.add(start, 0);
+
+        int last = start;
+        while (!this.openList.isEmpty() && this.expanded < maxExpansions) {
+            int tile = this.openList.poll();
+            this.expanded++;
+            last = tile;
+            if (tile == destination) {
+                this.destinationReached = true;
+                break;
+            }
+            expand(tile);
+        }
+        follow(start, last);
+        return this.expanded;
+    }
+
+    /**
+     * Returns the tile after {@code from} on the path to the player, or
+     * {@code from} itself if there is no path (or the tracker left it).
+     */
+    public int nextStep(int from) {
+        if (from != this.position)
+            return from;
+        while (this.pathIndex < this.pathLength && this.path[this.pathIndex] == from)
+            this.pathIndex++;
+        if (this.pathIndex == this.pathLength)
+            return from;
+        int target = this.path[this.pathIndex];
+        if (target / this.width == from / this.width)
+            this.position = from + (target > from ? 1 : -1);
+        else
+            this.position = from + (target > from ? this.width : -this.width);
+        return this.position;
+    }
+
+    /** The jump points from start to end become the path */
+    private void follow(int start, int end) {
+        int length = 1;
+        for (int tile = end; tile != start; tile = this.parent.get(tile))
+            length++;
+        if (this.path.length < length)
+            this.path = new int[length];
+        this.pathLength = length;
+        int i = length;
+        for (int tile = end; tile != start; tile = this.parent.get(tile))
+            this.path[--i] = tile;
+        this.path[0] = start;
+    }
+
+    /** Jump in the directions a path through the jump point may continue in */
+    private void expand(int tile) {
+        int from = this.parent.get(tile);
+        int cost = this.g.get(tile);
+        if (from == tile) {
+            // The start: every direction
+            relax(jumpHorizontal(tile, 1), tile, cost);
+            relax(jumpHorizontal(tile, -1), tile, cost);
+            relax(jumpVertical(tile, this.width), tile, cost);
+            relax(jumpVertical(tile, -this.width), tile, cost);
+        } else if (from / this.width == tile / this.width) {
+            // Along a row: straight on, and up or down only beside the end of a wall
+            int dx = from < tile ? 1 : -1;
+            relax(jumpHorizontal(tile, dx), tile, cost);
+            if (forced(tile, dx, -this.width))
+                relax(jumpVertical(tile, -this.width), tile, cost);
+            if (forced(tile, dx, this.width))
+                relax(jumpVertical(tile, this.width), tile, cost);
+        } else {
+            // Along a column: straight on, left or right
+            relax(jumpVertical(tile, from < tile ? this.width : -this.width), tile, cost);
+            relax(jumpHorizontal(tile, 1), tile, cost);
+            relax(jumpHorizontal(tile, -1), tile, cost);
+        }
+    }
+
+    /**
+     * Can a path arriving at the tile along a row in direction dx have to turn
+     * up or down (dy = -width or width) here? Only if it could not have turned
+     * one tile earlier.
+     */
+    private boolean forced(int tile, int dx, int dy) {
+        int side = tile + dy;
+        return side >= 0 && side < this.size && this.terrain.isWalkable(side) && !this.terrain.isWalkable(side - dx);
+    }
+
+    /** Walk along the row in direction dx (1 or -1) to the next jump point, -1 if there is none */
+    private int jumpHorizontal(int tile, int dx) {
+        int from = tile % this.width;
+        int y = tile / this.width;
+        // Find the first tile which is a wall or has a forced neighbour, 64 tiles at a time
+        int x;
+        if (dx > 0) {
+            int first = (from + 1) >> 6;
+            for (int word = first; ; word++) {
+                long up = this.grid.getWord(word, y - 1);
+                long down = this.grid.getWord(word, y + 1);
+                long upBefore = (up << 1) | (this.grid.getWord(word - 1, y - 1) >>> 63);
+                long downBefore = (down << 1) | (this.grid.getWord(word - 1, y + 1) >>> 63);
+                long stop = ~this.grid.getWord(word, y) | (up & ~upBefore) | (down & ~downBefore);
+                if (word == first)
+                    stop &= -1L << (from + 1);
+                if (stop != 0) {
+                    x = (word << 6) + Long.numberOfTrailingZeros(stop);
+                    break;
+                }
+            }
+        } else {
+            int first = (from - 1) >> 6;
+            for (int word = first; ; word--) {
+                long up = this.grid.getWord(word, y - 1);
+                long down = this.grid.getWord(word, y + 1);
+                long upAfter = (up >>> 1) | (this.grid.getWord(word + 1, y - 1) << 63);
+                long downAfter = (down >>> 1) | (this.grid.getWord(word + 1, y + 1) << 63);
+                long stop = ~this.grid.getWord(word, y) | (up & ~upAfter) | (down & ~downAfter);
+                if (word == first)
+                    stop &= -1L >>> (63 - ((from - 1) & 63));
+                if (stop != 0) {
+                    x = (word << 6) + 63 - Long.numberOfLeadingZeros(stop);
+                    break;
+                }
+            }
+        }
+
+        // The destination comes first if it lies before that tile
+        if (this.destination / this.width == y) {
+            int destinationX = this.destination % this.width;
+            if (dx > 0 ? destinationX > from && destinationX <= x : destinationX < from && destinationX >= x) {
+                this.scanned += Math.abs(destinationX - from);
+                return this.destination;
+            }
+        }
+        this.scanned += Math.abs(x - from);
+        return x >= 0 && x < this.width && this.grid.isWalkable(x, y) ? x + y * this.width : -1;
+    }
+
+    /** Walk along the column in direction dy (width or -width) to the next jump point, -1 if there is none */
+    private int jumpVertical(int tile, int dy) {
+        while (true) {
+            tile += dy;
+            if (tile < 0 || tile >= this.size || !this.terrain.isWalkable(tile))
+                return -1;
+            this.scanned++;
+            if (tile == this.destination || jumpHorizontal(tile, 1) >= 0 || jumpHorizontal(tile, -1) >= 0)
+                return tile;
+        }
+    }
+
+    /** Reach a jump point from another one on the same row or column, if that is better than before */
+    private void relax(int tile, int from, int cost) {
+        if (tile < 0)
+            return;
+        cost += Math.abs(tile % this.width - from % this.width) + Math.abs(tile / this.width - from / this.width);
+        if (this.stamp.get(tile) == this.generation && this.g.get(tile) <= cost)
+            return;
+        this.stamp.set(tile, this.generation);
+        this.g.set(tile, cost);
+        this.parent.set(tile, from);
+        int h = Math.abs(tile % this.width - this.destination % this.width) + Math.abs(tile / this.width - this.destination / this.width);
+        if (this.destinationLandmarks != null)
+            h = Math.max(h, this.landmarks.lowerBound(tile, this.destinationLandmarks));
+        this.openList.update(tile, ((long) (cost + h) << 32) | h);
+    }
+}
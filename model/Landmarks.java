@@ -0,0 +1,359 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Landmark tables for the ALT heuristic (A*, landmarks, triangle inequality).
+ * A few tiles spread along the border of the map are landmarks; for each of
+ * them a breadth-first search records the exact distance of every tile. Since
+ * no way from a to b can be shorter than |d(L, a) - d(L, b)| for any landmark
+ * L, the tables give a lower bound of the distance which, unlike the
+ * Manhattan distance, knows about the walls. Searches guided by it expand far
+ * fewer tiles on maps with long detours (mazes).
+ *
+ * A table holds one char per tile. Distances beyond {@link #MAX_DISTANCE} are
+ * stored as MAX_DISTANCE, which keeps the bound a lower bound (it only gets
+ * weaker). The tables are computed in parallel, one task per landmark, and can
+ * be saved next to the map so later loads skip the searches
+ * ({@link #forMap(Path, Terrain, int)}).
+ *
+ * Tables describe the map as it was when they were computed: once a tile
+ * changes they are no longer used ({@link #isValid()}) and the searches fall
+ * back to the Manhattan distance.
+ *
+ * See A. V. Goldberg, C. Harrelson: Computing the Shortest Path: A* Search
+ * Meets Graph Theory (2005).
+ */
+public class Landmarks {
+
+    /** Landmarks used when no number is given */
+    public static final int DEFAULT_COUNT = 8;
+    /** Table entry of tiles which cannot reach the landmark */
+    public static final int UNREACHABLE = 0xFFFF;
+    /** Largest distance a table can hold, longer ones are cut down to it */
+    public static final int MAX_DISTANCE = 0xFFFE;
+
+    /** "LMRK" */
+    private static final int MAGIC = 0x4C4D524B;
+    private static final int VERSION = 1;
+    /** Magic, version, width, height, count, checksum */
+    private static final int HEADER_SIZE = 24;
+
+    private final int width;
+    private final int height;
+    /** The map, shared with the world */
+    private final Terrain terrain;
+    /** Tiles of the landmarks */
+    private final int[] tiles;
+    /** Distance of every tile from each landmark */
+    private final char[][] tables;
+    /** Terrain modifications the tables were computed for */
+    private final int modifications;
+
+    private Landmarks(Terrain terrain, int[] tiles, char[][] tables) {
+        this.width = terrain.getWidth();
+        this.height = terrain.getHeight();
+        this.terrain = terrain;
+        this.tiles = tiles;
+        this.tables = tables;
+        this.modifications = terrain.getModifications();
+    }
+
+    /**
+     * Chooses the landmarks and computes their tables.
+     *
+     * @param count number of landmarks, more give a tighter bound but cost
+     * more memory (2 bytes per tile each) and time per opened tile.
+     */
+    public static Landmarks compute(Terrain terrain, int count) {
+        if (count <= 0)
+            throw new IllegalArgumentException("Invalid number of landmarks " + count);
+        int[] tiles = choose(terrain, count);
+        char[][] tables = new char[tiles.length][];
+        // Runs on this thread and the common fork-join pool (only on this thread if the map cannot be shared)
+        new Compute(terrain, tiles, tables, 0, tiles.length).invoke();
+        return new Landmarks(terrain, tiles, tables);
+    }
+
+    /**
+     * Loads the tables saved next to a map file, or computes and saves them
+     * if there are none for this map (or they were computed for a different
+     * number of landmarks).
+     *
+     * @param mapFile the file the terrain was loaded from.
+     * @throws IOException if the tables cannot be saved.
+     */
+    public static Landmarks forMap(Path mapFile, Terrain terrain, int count) throws IOException {
+        Path file = fileFor(mapFile);
+        if (Files.isRegularFile(file)) {
+            Landmarks landmarks = load(file, terrain);
+            if (landmarks != null && landmarks.getCount() == count)
+                return landmarks;
+        }
+        Landmarks landmarks = compute(terrain, count);
+        landmarks.save(file);
+        return landmarks;
+    }
+
+    /** The file the tables of a map are saved in: the map's name with ".landmarks" appended */
+    public static Path fileFor(Path mapFile) {
+        return mapFile.resolveSibling(mapFile.getFileName() + ".landmarks");
+    }
+
+    /**
+     * Loads saved tables.
+     *
+     * @return the tables, or null if they were computed for a different map.
+     * @throws IOException if the file cannot be read or is not a landmark file.
+     */
+    public static Landmarks load(Path file, Terrain terrain) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE)
+                throw new IOException("Not a landmark file");
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+            if (header.getInt(0) != MAGIC)
+                throw new IOException("Not a landmark file");
+            if (header.getInt(4) != VERSION)
+                throw new IOException("Unsupported landmark version " + header.getInt(4));
+            int count = header.getInt(16);
+            if (header.getInt(8) != terrain.getWidth() || header.getInt(12) != terrain.getHeight()
+                    || header.getInt(20) != terrain.getChecksum())
+                return null;
+            if (count <= 0 || size != HEADER_SIZE + 4L * count + 2L * count * terrain.getSize())
+                throw new IOException("Landmark file has " + size + " bytes, expected " + count + " tables");
+
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, 4L * count).order(ByteOrder.BIG_ENDIAN);
+            int[] tiles = new int[count];
+            buffer.asIntBuffer().get(tiles);
+            char[][] tables = new char[count][terrain.getSize()];
+            long position = HEADER_SIZE + 4L * count;
+            for (char[] table : tables) {
+                for (int offset = 0; offset < table.length; ) {
+                    int length = (int) Math.min(MapLoader.REGION_SIZE / 2, table.length - offset);
+                    channel.map(FileChannel.MapMode.READ_ONLY, position, 2L * length).order(ByteOrder.BIG_ENDIAN)
+                            .asCharBuffer().get(table, offset, length);
+                    offset += length;
+                    position += 2L * length;
+                }
+            }
+            return new Landmarks(terrain, tiles, tables);
+        }
+    }
+
+    /** Writes the tables, see {@link #load(Path, Terrain)} */
+    public void save(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.BIG_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(this.width).putInt(this.height)
+                    .putInt(this.tiles.length).putInt(this.terrain.getChecksum());
+            for (int tile : this.tiles) {
+                if (buffer.remaining() < 4)
+                    write(channel, buffer);
+                buffer.putInt(tile);
+            }
+            for (char[] table : this.tables)
+                for (char distance : table) {
+                    if (buffer.remaining() < 2)
+                        write(channel, buffer);
+                    buffer.putChar(distance);
+                }
+            write(channel, buffer);
+        }
+    }
+
+    public int getCount() { return this.tiles.length; }
+    public int getTile(int i) { return this.tiles[i]; }
+    /** Approximate number of bytes used by the tables */
+    public long getMemory() { return 2L * this.tiles.length * this.width * this.height; }
+
+    /** Do the tables still describe the map (no tile changed since they were computed)? */
+    public boolean isValid() {
+        return this.terrain.getModifications() == this.modifications;
+    }
+
+    /** Distance of a tile from the i-th landmark, {@link #UNREACHABLE} if there is no way */
+    public int getDistance(int i, int tile) {
+        return this.tables[i][tile];
+    }
+
+    /**
+     * Distances of a tile from all landmarks, to pass to
+     * {@link #lowerBound(int, int[])} when many tiles are compared with it.
+     */
+    public int[] getDistances(int tile, int[] distances) {
+        if (distances == null || distances.length < this.tables.length)
+            distances = new int[this.tables.length];
+        for (int i = 0; i < this.tables.length; i++)
+            distances[i] = this.tables[i][tile];
+        return distances;
+    }
+
+    /**
+     * Lower bound of the distance between a tile and the tile whose distances
+     * from the landmarks are given (see {@link #getDistances(int, int[])}).
+     * Landmarks which cannot reach both tiles do not count.
+     */
+    public int lowerBound(int tile, int[] distances) {
+        int bound = 0;
+        for (int i = 0; i < this.tables.length; i++) {
+            int d = this.tables[i][tile];
+            int other = distances[i];
+            if (d != UNREACHABLE && other != UNREACHABLE)
+                bound = Math.max(bound, Math.abs(d - other));
+        }
+        return bound;
+    }
+
+    /** Lower bound of the distance between two tiles */
+    public int lowerBound(int a, int b) {
+        int bound = 0;
+        for (char[] table : this.tables)
+            if (table[a] != UNREACHABLE && table[b] != UNREACHABLE)
+                bound = Math.max(bound, Math.abs(table[a] - table[b]));
+        return bound;
+    }
+
+    /**
+     * Landmarks spread evenly along the border (the farther apart, the better
+     * the bound), each moved to the nearest walkable tile.
+     */
+    private static int[] choose(Terrain terrain, int count) {
+        int width = terrain.getWidth();
+        int height = terrain.getHeight();
+        long perimeter = 2L * (width + height);
+        int[] tiles = new int[count];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            long position = perimeter * i / count;
+            int x;
+            int y;
+            if (position < width) {
+                x = (int) position;
+                y = 0;
+            } else if (position < width + height) {
+                x = width - 1;
+                y = (int) (position - width);
+            } else if (position < 2L * width + height) {
+                x = (int) (2L * width + height - 1 - position);
+                y = height - 1;
+            } else {
+                x = 0;
+                y = (int) (perimeter - 1 - position);
+            }
+            int tile = nearestWalkable(terrain, x, y);
+            if (tile >= 0 && indexOf(tiles, n, tile) < 0)
+                tiles[n++] = tile;
+        }
+        if (n == 0)
+            throw new IllegalArgumentException("Map has no walkable tile");
+        return Arrays.copyOf(tiles, n);
+    }
+
+    private static int indexOf(int[] tiles, int count, int tile) {
+        for (int i = 0; i < count; i++)
+            if (tiles[i] == tile)
+                return i;
+        return -1;
+    }
+
+    /** Walkable tile closest to (x, y) by the Chebyshev distance, -1 if there is none */
+    private static int nearestWalkable(Terrain terrain, int x, int y) {
+        int width = terrain.getWidth();
+        int height = terrain.getHeight();
+        int radius = Math.max(width, height);
+        for (int r = 0; r < radius; r++)
+            for (int dy = -r; dy <= r; dy++)
+                for (int dx = -r; dx <= r; dx++) {
+                    if (Math.max(Math.abs(dx), Math.abs(dy)) != r)
+                        continue;
+                    int nx = x + dx;
+                    int ny = y + dy;
+                    if (nx >= 0 && ny >= 0 && nx < width && ny < height && terrain.isWalkable(nx + ny * width))
+                        return nx + ny * width;
+                }
+        return -1;
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    /** Computes the tables of the landmarks [from, to), splitting the range into a task per landmark */
+    private static class Compute extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Terrain terrain;
+        private final int[] tiles;
+        private final char[][] tables;
+        private final int from;
+        private final int to;
+
+        Compute(Terrain terrain, int[] tiles, char[][] tables, int from, int to) {
+            this.terrain = terrain;
+            this.tiles = tiles;
+            this.tables = tables;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from == 1 || !this.terrain.isConcurrent()) {
+                int[] queue = new int[this.terrain.getSize()];
+                for (int i = this.from; i < this.to; i++)
+                    this.tables[i] = explore(this.terrain, this.tiles[i], queue);
+                return;
+            }
+            int middle = (this.from + this.to) >>> 1;
+            invokeAll(new Compute(this.terrain, this.tiles, this.tables, this.from, middle),
+                    new Compute(this.terrain, this.tiles, this.tables, middle, this.to));
+        }
+
+        /** Breadth-first search from a landmark over the walkable tiles */
+        private static char[] explore(Terrain terrain, int landmark, int[] queue) {
+            int width = terrain.getWidth();
+            int size = terrain.getSize();
+            char[] table = new char[size];
+            Arrays.fill(table, (char) UNREACHABLE);
+            int head = 0;
+            int tail = 0;
+            table[landmark] = 0;
+            queue[tail++] = landmark;
+            while (head < tail) {
+                int tile = queue[head++];
+                char next = (char) Math.min(table[tile] + 1, MAX_DISTANCE);
+                int x = tile % width;
+                if (x > 0 && table[tile - 1] == UNREACHABLE && terrain.isWalkable(tile - 1)) {
+                    table[tile - 1] = next;
+                    queue[tail++] = tile - 1;
+                }
+                if (x < width - 1 && table[tile + 1] == UNREACHABLE && terrain.isWalkable(tile + 1)) {
+                    table[tile + 1] = next;
+                    queue[tail++] = tile + 1;
+                }
+                if (tile >= width && table[tile - width] == UNREACHABLE && terrain.isWalkable(tile - width)) {
+                    table[tile - width] = next;
+                    queue[tail++] = tile - width;
+                }
+                if (tile < size - width && table[tile + width] == UNREACHABLE && terrain.isWalkable(tile + width)) {
+                    table[tile + width] = next;
+                    queue[tail++] = tile + width;
+                }
+            }
+            return table;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Loads maps into a {@link Terrain} without building strings or boxed numbers
+ * on the way. Files are memory-mapped and parsed region by region, so the
+ * heap only ever holds the resulting byte per tile.
+ *
+ * Two formats are understood:
+ * <ul>
+ * <li>Text (./assets/Tilemap.txt): comma separated tile types, one row per
+ * line, optionally preceded by a line "width height".</li>
+ * <li>Binary: the magic number "LABY", a version, width and height (each a
+ * big-endian int) followed by one byte per tile. See {@link #save(Terrain, Path)}.</li>
+ * </ul>
+ *
+ * Binary maps can also be opened as a {@link ChunkedTerrain}, which only
+ * keeps the parts of the map in memory that are in use.
+ */
+public class MapLoader {
+
+    /** "LABY" */
+    private static final int MAGIC = 0x4C414259;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    /** Size of the regions files are mapped in */
+    static final long REGION_SIZE = 1L << 28;
+
+    /**
+     * Hide default constructor
+     */
+    private MapLoader() {}
+
+    /**
+     * Loads a map in the text or the binary format.
+     *
+     * @throws IOException if the file cannot be read or is not a valid map.
+     */
+    public static Terrain load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= HEADER_SIZE) {
+                ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+                if (header.getInt(0) == MAGIC)
+                    return loadBinary(channel, header, size);
+            }
+            return loadText(channel, size);
+        }
+    }
+
+    /**
+     * Opens a map in the binary format without loading it. Chunks of the map
+     * are read when they are first used and evicted again once more than the
+     * given number of bytes is in use.
+     *
+     * @throws IOException if the file cannot be read or is not a binary map.
+     */
+    public static ChunkedTerrain open(Path file, long memoryBudget) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE)
+                throw new IOException("Not a binary map, convert it with MapConverter first");
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+            if (header.getInt(0) != MAGIC)
+                throw new IOException("Not a binary map, convert it with MapConverter first");
+            if (header.getInt(4) != VERSION)
+                throw new IOException("Unsupported map version " + header.getInt(4));
+            int width = header.getInt(8);
+            int height = header.getInt(12);
+            try {
+                if (size - HEADER_SIZE != checkedSize(width, height))
+                    throw new IOException("Map file has " + (size - HEADER_SIZE) + " tiles, expected " + width + "x" + height);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage());
+            }
+            return new ChunkedTerrain(channel, HEADER_SIZE, width, height, memoryBudget);
+        }
+    }
+
+    /**
+     * Writes a map in the binary format.
+     */
+    public static void save(Terrain terrain, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeHeader(channel, terrain.getWidth(), terrain.getHeight());
+            if (terrain.getTypes() != null) {
+                ByteBuffer body = ByteBuffer.wrap(terrain.getTypes());
+                while (body.hasRemaining())
+                    channel.write(body);
+                return;
+            }
+            // The tile types are not in one array (ChunkedTerrain): write row by row
+            ByteBuffer row = ByteBuffer.allocate(terrain.getWidth());
+            for (int y = 0; y < terrain.getHeight(); y++) {
+                row.clear();
+                for (int x = 0; x < terrain.getWidth(); x++)
+                    row.put((byte) terrain.getType(x, y));
+                row.flip();
+                while (row.hasRemaining())
+                    channel.write(row);
+            }
+        }
+    }
+
+    /** Write the header of a binary map, the tiles follow row by row */
+    static void writeHeader(FileChannel channel, int width, int height) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).flip();
+        while (header.hasRemaining())
+            channel.write(header);
+    }
+
+    /**
+     * Parses a map given as comma separated tile types (whitespace is ignored).
+     */
+    public static Terrain parse(CharSequence map, int width, int height) {
+        byte[] types = new byte[checkedSize(width, height)];
+        Parser parser = new Parser(types);
+        for (int i = 0; i < map.length(); i++)
+            parser.accept(map.charAt(i));
+        parser.finish();
+        if (parser.count != types.length)
+            throw new IllegalArgumentException("Map has " + parser.count + " tiles, expected " + width + "x" + height);
+        return new Terrain(width, height, types);
+    }
+
+    private static Terrain loadBinary(FileChannel channel, ByteBuffer header, long size) throws IOException {
+        if (header.getInt(4) != VERSION)
+            throw new IOException("Unsupported map version " + header.getInt(4));
+        int width = header.getInt(8);
+        int height = header.getInt(12);
+        byte[] types = new byte[checkedSize(width, height)];
+        if (size - HEADER_SIZE != types.length)
+            throw new IOException("Map file has " + (size - HEADER_SIZE) + " tiles, expected " + width + "x" + height);
+
+        for (long position = 0; position < types.length; position += REGION_SIZE) {
+            int length = (int) Math.min(REGION_SIZE, types.length - position);
+            channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + position, length).get(types, (int) position, length);
+        }
+        return new Terrain(width, height, types);
+    }
+
+    private static Terrain loadText(FileChannel channel, long size) throws IOException {
+        // The first line is either the size of the map or its first row
+        long lineEnd = size;
+        boolean header = true;
+        search:
+        for (long position = 0; position < size; position += REGION_SIZE) {
+            int length = (int) Math.min(REGION_SIZE, size - position);
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            for (int i = 0; i < length; i++) {
+                byte b = region.get(i);
+                if (b == '\n') {
+                    lineEnd = position + i;
+                    break search;
+                }
+                header &= b != ',';
+            }
+        }
+
+        int width;
+        int height;
+        long offset;
+        Parser sizes = new Parser(null);
+        sizes.header = true;
+        if (header && parse(channel, 0, lineEnd, sizes).count == 2) {
+            width = sizes.values[0];
+            height = sizes.values[1];
+            offset = lineEnd + 1;
+        } else {
+            // No header: the first line tells the width, the number of tiles the height
+            width = (int) parse(channel, 0, lineEnd, new Parser(null)).count;
+            long tiles = parse(channel, 0, size, new Parser(null)).count;
+            if (tiles % width != 0)
+                throw new IOException("Map is not rectangular");
+            height = (int) (tiles / width);
+            offset = 0;
+        }
+
+        byte[] types;
+        try {
+            types = new byte[checkedSize(width, height)];
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+        Parser parser = parse(channel, offset, size, new Parser(types));
+        if (parser.count != types.length)
+            throw new IOException("Map has " + parser.count + " tiles, expected " + width + "x" + height);
+        return new Terrain(width, height, types);
+    }
+
+    /** Feed the bytes [from, to) of the file to the parser */
+    private static Parser parse(FileChannel channel, long from, long to, Parser parser) throws IOException {
+        try {
+            for (long position = from; position < to; position += REGION_SIZE) {
+                int length = (int) Math.min(REGION_SIZE, to - position);
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                for (int i = 0; i < length; i++)
+                    parser.accept((char) region.get(i));
+            }
+            parser.finish();
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+        return parser;
+    }
+
+    static int checkedSize(int width, int height) {
+        if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Invalid map size " + width + "x" + height);
+        return width * height;
+    }
+
+    /**
+     * Turns characters into tile types. Without a target the values are only counted.
+     */
+    private static class Parser {
+
+        /** Target for the tile types or null */
+        private final byte[] types;
+        /** Header values (only if header is set) */
+        private final int[] values = new int[2];
+        /** Parse the header: the values are the size of the map, not tile types */
+        private boolean header;
+        private long count;
+        private int value;
+        private boolean digits;
+
+        Parser(byte[] types) {
+            this.types = types;
+        }
+
+        void accept(char c) {
+            if (c >= '0' && c <= '9') {
+                this.value = this.value * 10 + (c - '0');
+                this.digits = true;
+                if (this.value > (this.header ? Integer.MAX_VALUE / 10 : 255))
+                    throw new IllegalArgumentException("Invalid tile type at tile " + this.count);
+            } else if (c == ',' || c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                finish();
+            } else {
+                throw new IllegalArgumentException("Unexpected character '" + c + "' at tile " + this.count);
+            }
+        }
+
+        void finish() {
+            if (!this.digits)
+                return;
+            if (this.header) {
+                if (this.count < this.values.length)
+                    this.values[(int) this.count] = this.value;
+            } else if (this.types != null) {
+                if (this.count >= this.types.length)
+                    throw new IllegalArgumentException("Map has more than " + this.types.length + " tiles");
+                this.types[(int) this.count] = (byte) this.value;
+            }
+            this.count++;
+            this.value = 0;
+            this.digits = false;
+        }
+    }
+}
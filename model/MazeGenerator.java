@@ -0,0 +1,419 @@
+package model;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Generates labyrinths of any size from a seed, as test data for the
+ * pathfinding and the views. The same seed and settings always give the
+ * same map, no matter how many threads generate it.
+ *
+ * The map is a grid of square cells (corridors {@link #setCorridorWidth(int)}
+ * tiles wide) separated by walls one tile thick. The cells are grouped into
+ * regions of {@link #REGION_CELLS}x{@link #REGION_CELLS} cells. Every region
+ * is a maze of its own (a depth-first search with its own random numbers),
+ * so the regions are generated in parallel; a spanning tree over the regions
+ * then decides which neighbouring regions are joined by a passage. Every
+ * cell can be reached from every other. Loops knock out some of the
+ * remaining walls, rooms open rectangles of cells completely.
+ *
+ * A row of regions is generated at a time, while the row before it is
+ * written, so {@link #write(Path)} keeps two rows of regions in memory
+ * however large the map is.
+ */
+public class MazeGenerator {
+
+    /** Tile type of corridors and rooms */
+    public static final int FLOOR = 1;
+    /** Cells per side of a region */
+    static final int REGION_CELLS = 256;
+    /** Largest side of a room in cells */
+    private static final int MAX_ROOM = 8;
+
+    private final int width;
+    private final int height;
+    private final long seed;
+    private int corridorWidth = 1;
+    private int loops;
+    private int rooms;
+
+    public MazeGenerator(int width, int height, long seed) {
+        MapLoader.checkedSize(width, height);
+        if (width < 3 || height < 3)
+            throw new IllegalArgumentException("Invalid maze size " + width + "x" + height);
+        this.width = width;
+        this.height = height;
+        this.seed = seed;
+    }
+
+    public int getWidth() { return this.width; }
+    public int getHeight() { return this.height; }
+    public long getSeed() { return this.seed; }
+    public int getCorridorWidth() { return this.corridorWidth; }
+    public int getLoops() { return this.loops; }
+    public int getRooms() { return this.rooms; }
+
+    /** Width of the corridors in tiles (1 by default) */
+    public void setCorridorWidth(int corridorWidth) {
+        if (corridorWidth < 1 || corridorWidth + 2 > Math.min(this.width, this.height))
+            throw new IllegalArgumentException("Invalid corridor width " + corridorWidth);
+        this.corridorWidth = corridorWidth;
+    }
+
+    /** Percentage of the walls between cells which are knocked out after the maze is built (0: a single way between two cells) */
+    public void setLoops(int loops) {
+        if (loops < 0 || loops > 100)
+            throw new IllegalArgumentException("Invalid loop percentage " + loops);
+        this.loops = loops;
+    }
+
+    /** Approximate percentage of the cells which lie in open rooms */
+    public void setRooms(int rooms) {
+        if (rooms < 0 || rooms > 100)
+            throw new IllegalArgumentException("Invalid room percentage " + rooms);
+        this.rooms = rooms;
+    }
+
+    /** The top left tile of the first cell, a good start for the player */
+    public int getStart() {
+        return 1 + this.width;
+    }
+
+    /** The bottom right tile of the last cell, as far from the start as it gets */
+    public int getDestination() {
+        int pitch = this.corridorWidth + 1;
+        int x = ((this.width - 1) / pitch - 1) * pitch + this.corridorWidth;
+        int y = ((this.height - 1) / pitch - 1) * pitch + this.corridorWidth;
+        return x + y * this.width;
+    }
+
+    /** Generates the whole map on the heap */
+    public Terrain generate() {
+        Layout layout = new Layout();
+        byte[] types = new byte[this.width * this.height];
+        for (int band = 0; band < layout.regionsY; band++)
+            new Regions(layout, band, types, layout.firstRow(band) * this.width, 0, layout.regionsX).invoke();
+        return new Terrain(this.width, this.height, types);
+    }
+
+    /** Streams the map into a file in the binary format (see {@link MapLoader#save(Terrain, Path)}) */
+    public void write(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MapLoader.writeHeader(channel, this.width, this.height);
+            stream((band, length) -> {
+                ByteBuffer buffer = ByteBuffer.wrap(band, 0, length);
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+            });
+        }
+    }
+
+    /** Streams the map into a file in the text format, with a line "width height" first */
+    public void writeText(Path file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+            out.write((this.width + " " + this.height + "\n").getBytes(StandardCharsets.US_ASCII));
+            byte[] line = new byte[4 * this.width];
+            stream((band, length) -> {
+                for (int row = 0; row < length; row += this.width) {
+                    int n = 0;
+                    for (int x = 0; x < this.width; x++) {
+                        int type = band[row + x] & 0xFF;
+                        if (type >= 100)
+                            line[n++] = (byte) ('0' + type / 100);
+                        if (type >= 10)
+                            line[n++] = (byte) ('0' + type / 10 % 10);
+                        line[n++] = (byte) ('0' + type % 10);
+                        line[n++] = (byte) (x < this.width - 1 ? ',' : '\n');
+                    }
+                    out.write(line, 0, n);
+                }
+            });
+        }
+    }
+
+    /** Takes the tiles of a row of regions, row by row */
+    private interface Sink {
+        void accept(byte[] band, int length) throws IOException;
+    }
+
+    /** Generates the rows of regions one after the other, the next one while the sink takes the last one */
+    private void stream(Sink sink) throws IOException {
+        Layout layout = new Layout();
+        int rows = 0;
+        for (int band = 0; band < layout.regionsY; band++)
+            rows = Math.max(rows, layout.firstRow(band + 1) - layout.firstRow(band));
+        byte[][] buffers = { new byte[rows * this.width], new byte[rows * this.width] };
+        Regions current = new Regions(layout, 0, buffers[0], 0, 0, layout.regionsX);
+        current.fork();
+        for (int band = 0; band < layout.regionsY; band++) {
+            current.join();
+            Regions next = null;
+            if (band + 1 < layout.regionsY) {
+                next = new Regions(layout, band + 1, buffers[(band + 1) & 1], 0, 0, layout.regionsX);
+                next.fork();
+            }
+            sink.accept(buffers[band & 1], (layout.firstRow(band + 1) - layout.firstRow(band)) * this.width);
+            current = next;
+        }
+    }
+
+    /** Sizes derived from the settings and the passages between the regions */
+    private class Layout {
+
+        final int pitch = corridorWidth + 1;
+        final int cellsX = (width - 1) / this.pitch;
+        final int cellsY = (height - 1) / this.pitch;
+        final int regionsX = (this.cellsX + REGION_CELLS - 1) / REGION_CELLS;
+        final int regionsY = (this.cellsY + REGION_CELLS - 1) / REGION_CELLS;
+        /** Is a region joined to the region on its left / above it? */
+        final boolean[] joinLeft = new boolean[this.regionsX * this.regionsY];
+        final boolean[] joinUp = new boolean[this.regionsX * this.regionsY];
+
+        Layout() {
+            // Kruskal's algorithm over the regions, the edges in random order
+            int regions = this.regionsX * this.regionsY;
+            int[] edges = new int[2 * regions];
+            int count = 0;
+            for (int region = 0; region < regions; region++) {
+                if (region % this.regionsX > 0)
+                    edges[count++] = 2 * region;
+                if (region >= this.regionsX)
+                    edges[count++] = 2 * region + 1;
+            }
+            SplittableRandom random = new SplittableRandom(seed);
+            for (int i = count - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = edges[i];
+                edges[i] = edges[j];
+                edges[j] = swap;
+            }
+            int[] parent = new int[regions];
+            for (int region = 0; region < regions; region++)
+                parent[region] = region;
+            for (int i = 0; i < count; i++) {
+                int region = edges[i] >> 1;
+                boolean up = (edges[i] & 1) != 0;
+                int a = find(parent, region);
+                int b = find(parent, up ? region - this.regionsX : region - 1);
+                if (a == b)
+                    continue;
+                parent[a] = b;
+                if (up)
+                    this.joinUp[region] = true;
+                else
+                    this.joinLeft[region] = true;
+            }
+        }
+
+        /** First tile row of a row of regions (the wall above its cells), the height of the map after the last */
+        int firstRow(int band) {
+            return band >= this.regionsY ? height : band * REGION_CELLS * this.pitch;
+        }
+
+        /** First tile column of a column of regions, the width of the map after the last */
+        int firstColumn(int column) {
+            return column >= this.regionsX ? width : column * REGION_CELLS * this.pitch;
+        }
+
+        private int find(int[] parent, int region) {
+            while (parent[region] != region)
+                region = parent[region] = parent[parent[region]];
+            return region;
+        }
+    }
+
+    /** Generates the regions [from, to) of a row of regions, splitting the range into a task per region */
+    private class Regions extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Layout layout;
+        private final int band;
+        private final byte[] tiles;
+        /** Index of the row's first tile in tiles */
+        private final int offset;
+        private final int from;
+        private final int to;
+
+        Regions(Layout layout, int band, byte[] tiles, int offset, int from, int to) {
+            this.layout = layout;
+            this.band = band;
+            this.tiles = tiles;
+            this.offset = offset;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from == 1) {
+                new Region(this.layout, this.from, this.band, this.tiles, this.offset).generate();
+                return;
+            }
+            int middle = (this.from + this.to) >>> 1;
+            invokeAll(new Regions(this.layout, this.band, this.tiles, this.offset, this.from, middle),
+                    new Regions(this.layout, this.band, this.tiles, this.offset, middle, this.to));
+        }
+    }
+
+    /**
+     * One region: its cells, the walls between them and the walls on its
+     * left and top side (the walls on its right and bottom side belong to
+     * the next regions, or to the border of the map).
+     */
+    private class Region {
+
+        private final Layout layout;
+        private final int index;
+        private final byte[] tiles;
+        /** Index of the tile at the region's top left corner in tiles */
+        private final int origin;
+        private final int cellX;
+        private final int cellY;
+        private final int cellsX;
+        private final int cellsY;
+        private final SplittableRandom random;
+
+        Region(Layout layout, int regionX, int regionY, byte[] tiles, int offset) {
+            this.layout = layout;
+            this.index = regionX + regionY * layout.regionsX;
+            this.tiles = tiles;
+            this.origin = offset + layout.firstColumn(regionX);
+            this.cellX = regionX * REGION_CELLS;
+            this.cellY = regionY * REGION_CELLS;
+            this.cellsX = Math.min(REGION_CELLS, layout.cellsX - this.cellX);
+            this.cellsY = Math.min(REGION_CELLS, layout.cellsY - this.cellY);
+            this.random = new SplittableRandom(seed ^ (this.index + 1) * 0x9E3779B97F4A7C15L);
+
+            // Walls everywhere to begin with (the buffer may hold the last row of regions)
+            int columns = layout.firstColumn(regionX + 1) - layout.firstColumn(regionX);
+            int rows = layout.firstRow(regionY + 1) - layout.firstRow(regionY);
+            for (int row = 0; row < rows; row++)
+                Arrays.fill(tiles, this.origin + row * width, this.origin + row * width + columns, (byte) 0);
+        }
+
+        void generate() {
+            carveMaze();
+            carveRooms();
+            if (loops > 0) {
+                for (int y = 0; y < this.cellsY; y++)
+                    for (int x = 0; x < this.cellsX; x++) {
+                        if (x + 1 < this.cellsX && !isOpen(x, y, x + 1, y) && this.random.nextInt(100) < loops)
+                            open(x, y, x + 1, y);
+                        if (y + 1 < this.cellsY && !isOpen(x, y, x, y + 1) && this.random.nextInt(100) < loops)
+                            open(x, y, x, y + 1);
+                    }
+            }
+
+            // Passages to the regions on the left and above: one if the spanning tree says so, more for loops
+            if (this.cellX > 0) {
+                if (this.layout.joinLeft[this.index])
+                    open(-1, this.random.nextInt(this.cellsY));
+                for (int y = 0; loops > 0 && y < this.cellsY; y++)
+                    if (this.random.nextInt(100) < loops)
+                        open(-1, y);
+            }
+            if (this.cellY > 0) {
+                if (this.layout.joinUp[this.index])
+                    open(this.random.nextInt(this.cellsX), -1);
+                for (int x = 0; loops > 0 && x < this.cellsX; x++)
+                    if (this.random.nextInt(100) < loops)
+                        open(x, -1);
+            }
+        }
+
+        /** Depth-first search over the cells, opening the wall to every cell it goes on to */
+        private void carveMaze() {
+            int cells = this.cellsX * this.cellsY;
+            boolean[] visited = new boolean[cells];
+            int[] stack = new int[cells];
+            int[] next = new int[4];
+            int top = 0;
+            int first = this.random.nextInt(cells);
+            visited[first] = true;
+            fill(first % this.cellsX, first / this.cellsX, first % this.cellsX, first / this.cellsX);
+            stack[top++] = first;
+            while (top > 0) {
+                int cell = stack[top - 1];
+                int x = cell % this.cellsX;
+                int y = cell / this.cellsX;
+                int count = 0;
+                if (x > 0 && !visited[cell - 1])
+                    next[count++] = cell - 1;
+                if (x + 1 < this.cellsX && !visited[cell + 1])
+                    next[count++] = cell + 1;
+                if (y > 0 && !visited[cell - this.cellsX])
+                    next[count++] = cell - this.cellsX;
+                if (y + 1 < this.cellsY && !visited[cell + this.cellsX])
+                    next[count++] = cell + this.cellsX;
+                if (count == 0) {
+                    top--;
+                    continue;
+                }
+                int chosen = next[this.random.nextInt(count)];
+                visited[chosen] = true;
+                open(x, y, chosen % this.cellsX, chosen / this.cellsX);
+                stack[top++] = chosen;
+            }
+        }
+
+        /** Open rectangles of cells until they cover about the share of the region asked for */
+        private void carveRooms() {
+            int cells = this.cellsX * this.cellsY;
+            long goal = (long) rooms * cells / 100;
+            long covered = 0;
+            for (int attempt = 0; covered < goal && attempt < cells; attempt++) {
+                int w = Math.min(this.cellsX, 2 + this.random.nextInt(MAX_ROOM - 1));
+                int h = Math.min(this.cellsY, 2 + this.random.nextInt(MAX_ROOM - 1));
+                int x = this.random.nextInt(this.cellsX - w + 1);
+                int y = this.random.nextInt(this.cellsY - h + 1);
+                fill(x, y, x + w - 1, y + h - 1);
+                covered += w * h;
+            }
+        }
+
+        /** Is the wall between two neighbouring cells of the region open? */
+        private boolean isOpen(int x0, int y0, int x1, int y1) {
+            int pitch = this.layout.pitch;
+            return this.tiles[this.origin + (x1 > x0 ? x1 * pitch : x0 * pitch + 1) + (y1 > y0 ? y1 * pitch : y0 * pitch + 1) * width] != 0;
+        }
+
+        /** Open the wall between two neighbouring cells (and the cells themselves) */
+        private void open(int x0, int y0, int x1, int y1) {
+            fill(Math.min(x0, x1), Math.min(y0, y1), Math.max(x0, x1), Math.max(y0, y1));
+        }
+
+        /** Open the wall on the left of (x = -1) or above (y = -1) a cell on the region's side */
+        private void open(int x, int y) {
+            int pitch = this.layout.pitch;
+            if (x < 0)
+                fillTiles(0, y * pitch + 1, 0, y * pitch + corridorWidth);
+            else
+                fillTiles(x * pitch + 1, 0, x * pitch + corridorWidth, 0);
+        }
+
+        /** Open the cells from (x0, y0) to (x1, y1) and all walls between them */
+        private void fill(int x0, int y0, int x1, int y1) {
+            int pitch = this.layout.pitch;
+            fillTiles(x0 * pitch + 1, y0 * pitch + 1, x1 * pitch + corridorWidth, y1 * pitch + corridorWidth);
+        }
+
+        /** Turn the tiles from (x0, y0) to (x1, y1) of the region into floor */
+        private void fillTiles(int x0, int y0, int x1, int y1) {
+            for (int y = y0; y <= y1; y++) {
+                int row = this.origin + y * width;
+                Arrays.fill(this.tiles, row + x0, row + x1 + 1, (byte) FLOOR);
+            }
+        }
+    }
+}
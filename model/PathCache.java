@@ -0,0 +1,237 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Paths found by the trackers, shared by all trackers of a world. A path to
+ * the player is stored under every tile on it, so a tracker which walks into
+ * the corridor another tracker has planned through finds the rest of the way
+ * without searching (keyed by the tracker's tile and the player's tile).
+ *
+ * The cache holds a fixed number of entries; when it is full the least
+ * recently used entry is evicted. The entries live in flat arrays (an open
+ * addressing hash table and a linked list by index), so lookups do not
+ * allocate. All paths are dropped when a tile of the map changes.
+ *
+ * Trackers first try to keep following their own path ({@link CachedPath});
+ * the counters tell how often that worked (reuses), how often this cache
+ * served a path (hits) and how often a search was needed (misses).
+ */
+public class PathCache {
+
+    /** Entries kept when no capacity is given */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private static final int NONE = -1;
+
+    /** The map, shared with the world */
+    private final Terrain terrain;
+    private final int capacity;
+    /** Hash table: entry + 1 per slot, 0 if the slot is empty */
+    private final int[] table;
+    private final int mask;
+    /** Key of an entry: tile << 32 | destination */
+    private final long[] keys;
+    /** Path of an entry: the tiles from the entry's tile (at offset) to the destination */
+    private final int[][] paths;
+    private final int[] offsets;
+    /** Entries from the most to the least recently used */
+    private final int[] newer;
+    private final int[] older;
+    private int newest = NONE;
+    private int oldest = NONE;
+    private int size;
+    /** Terrain modifications the entries were stored for */
+    private int modifications;
+
+    private long hits;
+    private long misses;
+    private long reuses;
+
+    public PathCache(Terrain terrain) {
+        this(terrain, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity entries at most (each tile of a stored path is an
+     * entry; the paths themselves are shared by their entries).
+     */
+    public PathCache(Terrain terrain, int capacity) {
+        if (capacity <= 0 || capacity > 1 << 28)
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        this.terrain = terrain;
+        this.capacity = capacity;
+        this.table = new int[Integer.highestOneBit(capacity) << 2];
+        this.mask = this.table.length - 1;
+        this.keys = new long[capacity];
+        this.paths = new int[capacity][];
+        this.offsets = new int[capacity];
+        this.newer = new int[capacity];
+        this.older = new int[capacity];
+        this.modifications = terrain.getModifications();
+    }
+
+    public Terrain getTerrain() { return this.terrain; }
+    public int getCapacity() { return this.capacity; }
+    public synchronized int size() { return this.size; }
+    /** Paths found in this cache */
+    public synchronized long getHits() { return this.hits; }
+    /** Lookups which found nothing (the tracker had to search) */
+    public synchronized long getMisses() { return this.misses; }
+    /** Turns a tracker kept following its own path (possibly trimmed or extended) */
+    public synchronized long getReuses() { return this.reuses; }
+
+    /** Share of the lookups this cache answered (0 if there was none) */
+    public synchronized double getHitRate() {
+        return this.hits + this.misses == 0 ? 0 : (double) this.hits / (this.hits + this.misses);
+    }
+
+    /** Share of the turns which did not need a search, whether the tracker reused its path or found one here */
+    public synchronized double getSavedRate() {
+        long turns = this.reuses + this.hits + this.misses;
+        return turns == 0 ? 0 : (double) (this.reuses + this.hits) / turns;
+    }
+
+    /** Approximate number of bytes used by the tables (not counting the paths) */
+    public long getMemory() {
+        return 4L * this.table.length + 32L * this.capacity;
+    }
+
+    /** Forget all paths (the counters stay) */
+    public synchronized void clear() {
+        Arrays.fill(this.table, 0);
+        Arrays.fill(this.paths, null);
+        this.newest = NONE;
+        this.oldest = NONE;
+        this.size = 0;
+        this.modifications = this.terrain.getModifications();
+    }
+
+    /**
+     * Looks for a path from a tile to the destination and copies it into the
+     * tracker's path. Counts a hit or a miss.
+     *
+     * @return true if a path was found.
+     */
+    public synchronized boolean get(int from, int destination, CachedPath path) {
+        checkModifications();
+        int slot = find(key(from, destination));
+        if (this.table[slot] == 0) {
+            this.misses++;
+            return false;
+        }
+        int entry = this.table[slot] - 1;
+        unlink(entry);
+        link(entry);
+        int[] tiles = this.paths[entry];
+        path.set(tiles, this.offsets[entry], tiles.length - this.offsets[entry]);
+        this.hits++;
+        return true;
+    }
+
+    /** Stores a path under each of its tiles except the last (the destination) */
+    public synchronized void put(int[] tiles, int offset, int length) {
+        checkModifications();
+        if (length < 2)
+            return;
+        int[] path = Arrays.copyOfRange(tiles, offset, offset + length);
+        int destination = path[length - 1];
+        // The tiles near the destination are stored last, so they are evicted last
+        for (int i = Math.max(0, length - 1 - this.capacity); i < length - 1; i++) {
+            long key = key(path[i], destination);
+            int slot = find(key);
+            int entry;
+            if (this.table[slot] != 0) {
+                entry = this.table[slot] - 1;
+                unlink(entry);
+            } else {
+                if (this.size == this.capacity) {
+                    entry = this.oldest;
+                    unlink(entry);
+                    remove(find(this.keys[entry]));
+                    slot = find(key);
+                } else {
+                    entry = this.size++;
+                }
+                this.keys[entry] = key;
+                this.table[slot] = entry + 1;
+            }
+            this.paths[entry] = path;
+            this.offsets[entry] = i;
+            link(entry);
+        }
+    }
+
+    /** Counts a turn in which a tracker kept following its own path */
+    synchronized void reused() {
+        this.reuses++;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d/%d entries, %d reuses, %d hits, %d misses (hit rate %.1f %%, %.1f %% of the searches saved)",
+                this.size, this.capacity, this.reuses, this.hits, this.misses, 100 * getHitRate(), 100 * getSavedRate());
+    }
+
+    private void checkModifications() {
+        if (this.terrain.getModifications() != this.modifications)
+            clear();
+    }
+
+    private static long key(int tile, int destination) {
+        return (long) tile << 32 | (destination & 0xFFFFFFFFL);
+    }
+
+    private int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & this.mask;
+    }
+
+    /** Slot holding the key, or the empty slot where it would go */
+    private int find(long key) {
+        int slot = hash(key);
+        while (this.table[slot] != 0 && this.keys[this.table[slot] - 1] != key)
+            slot = (slot + 1) & this.mask;
+        return slot;
+    }
+
+    /** Empty a slot, moving later entries of the same probe sequence back so lookups still find them */
+    private void remove(int slot) {
+        int empty = slot;
+        this.table[empty] = 0;
+        for (int i = (empty + 1) & this.mask; this.table[i] != 0; i = (i + 1) & this.mask) {
+            int home = hash(this.keys[this.table[i] - 1]);
+            // The entry may move to the empty slot unless its home lies between the two
+            boolean between = empty <= i ? empty < home && home <= i : empty < home || home <= i;
+            if (!between) {
+                this.table[empty] = this.table[i];
+                this.table[i] = 0;
+                empty = i;
+            }
+        }
+    }
+
+    /** Make an entry the most recently used */
+    private void link(int entry) {
+        this.older[entry] = this.newest;
+        this.newer[entry] = NONE;
+        if (this.newest != NONE)
+            this.newer[this.newest] = entry;
+        this.newest = entry;
+        if (this.oldest == NONE)
+            this.oldest = entry;
+    }
+
+    private void unlink(int entry) {
+        int newer = this.newer[entry];
+        int older = this.older[entry];
+        if (newer != NONE)
+            this.older[newer] = older;
+        else
+            this.newest = older;
+        if (older != NONE)
+            this.newer[older] = newer;
+        else
+            this.oldest = newer;
+    }
+}
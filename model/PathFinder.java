@@ -0,0 +1,203 @@
+package model;
+
+/**
+ * The A* search used by the trackers. All search state lives in arrays
+ * indexed by cell (cell = x + y * width), so a search does not allocate any
+ * objects per node and starting a new search does not need to touch every
+ * cell: tiles opened by an older search are recognised by their stamp. The
+ * arrays are {@link CellArray}s, so a tracker only pays for the part of the
+ * map it explores; the map itself is shared with the world.
+ *
+ * The ordering is the same as the "slightly tweaked" A* the trackers have
+ * always used: a tile's cost is its distance to the tracker plus its distance
+ * to the player, ties are broken by the distance to the player and then by the
+ * order in which the tiles were opened.
+ *
+ * With {@link Landmarks} the distances are estimated by the larger of the
+ * Manhattan distance and the landmark bound, which steers the search around
+ * walls instead of into them.
+ */
+public class PathFinder {
+
+    private final int width;
+    private final int height;
+    /** The map, shared with the world */
+    private final Terrain terrain;
+    /** Open list */
+    private final IndexedHeap openList;
+    /** Stamp of the search which opened a tile (A*: tile open or checked) */
+    private final CellArray stamp;
+    /** Predecessor of a tile (A*) */
+    private final CellArray predecessor;
+    /** Current search */
+    private int generation;
+    /** Landmark tables (null: Manhattan distances only) */
+    private Landmarks landmarks;
+    /** Distances of the start and the destination from the landmarks, null if the current search does not use them */
+    private int[] startLandmarks;
+    private int[] destinationLandmarks;
+
+    private int start;
+    private int destination;
+    private int currentTile;
+    private boolean finished;
+    private boolean destinationReached;
+    /** Number of tiles expanded by the current search */
+    private int expanded;
+
+    public PathFinder(Terrain terrain) {
+        this.width = terrain.getWidth();
+        this.height = terrain.getHeight();
+        this.terrain = terrain;
+        this.openList = new IndexedHeap(terrain.getSize());
+        this.stamp = new CellArray(terrain.getSize());
+        this.predecessor = new CellArray(terrain.getSize());
+    }
+
+    public int getStart() { return this.start; }
+    public int getDestination() { return this.destination; }
+    public int getCurrentTile() { return this.currentTile; }
+    public int getPredecessor(int tile) { return this.predecessor.get(tile); }
+    public int getExpanded() { return this.expanded; }
+    /** Largest size of the open list during the current search */
+    public int getOpenListPeak() { return this.openList.getPeakSize(); }
+    public boolean getFinished() { return this.finished; }
+    public boolean getDestinationReached() { return this.destinationReached; }
+    public Landmarks getLandmarks() { return this.landmarks; }
+
+    /** Use landmark tables of the map from the next search on (null to go back to Manhattan distances) */
+    public void setLandmarks(Landmarks landmarks) {
+        this.landmarks = landmarks;
+    }
+
+    /** Approximate number of bytes used by the search state */
+    public long getMemory() {
+        return this.openList.getMemory() + this.stamp.getMemory() + this.predecessor.getMemory();
+    }
+
+    /** Forget the current search. Runs in constant time. */
+    public void reset() {
+        this.openList.clear();
+        this.finished = true;
+        this.destinationReached = false;
+    }
+
+    /**
+     * Start a new search.
+     *
+     * @param start tile the tracker is standing on.
+     * @param destination tile the tracker wants to reach.
+     */
+    public void start(int start, int destination) {
+        reset();
+        if (++this.generation == 0) {
+            this.stamp.clear();
+            this.generation = 1;
+        }
+        this.start = start;
+        this.destination = destination;
+        this.currentTile = start;
+        this.stamp.set(start, this.generation);
+        this.predecessor.set(start, start);
+        this.finished = start == destination;
+        this.destinationReached = start == destination;
+        this.expanded = 0;
+        if (this.landmarks != null && this.landmarks.isValid()) {
+            this.startLandmarks = this.landmarks.getDistances(start, this.startLandmarks);
+            this.destinationLandmarks = this.landmarks.getDistances(destination, this.destinationLandmarks);
+        } else {
+            this.startLandmarks = null;
+        }
+    }
+
+    /**
+     * Let a search which has not finished head for another destination (a
+     * paused search whose target has moved, see {@link SearchScheduler}).
+     * Tiles opened so far keep their costs. The search is finished at once if
+     * it has already opened the new destination: the predecessors lead from
+     * there to the start.
+     */
+    public void retarget(int destination) {
+        this.destination = destination;
+        if (this.startLandmarks != null)
+            this.destinationLandmarks = this.landmarks.getDistances(destination, this.destinationLandmarks);
+        if (this.stamp.get(destination) == this.generation) {
+            this.currentTile = destination;
+            this.finished = true;
+            this.destinationReached = true;
+        }
+    }
+
+    /**
+     * Check the current tile, open its neighbours and pick the next tile.
+     *
+     * @return false once the search has finished.
+     */
+    public boolean step() {
+        if (this.finished)
+            return false;
+
+        int x = this.currentTile % this.width;
+        if (x > 0)
+            open(this.currentTile - 1);
+        if (x < this.width - 1)
+            open(this.currentTile + 1);
+        if (this.currentTile >= this.width)
+            open(this.currentTile - this.width);
+        if (this.currentTile < this.width * (this.height - 1))
+            open(this.currentTile + this.width);
+        this.expanded++;
+
+        if (this.openList.isEmpty()) {
+            // Destination unreachable
+            this.finished = true;
+            return false;
+        }
+        this.currentTile = this.openList.poll();
+        if (this.currentTile == this.destination) {
+            this.destinationReached = true;
+            this.finished = true;
+        }
+        return !this.finished;
+    }
+
+    /**
+     * Returns the tile after {@code from} on the path to the current tile, or
+     * {@code from} itself if there is nowhere to go.
+     *
+     * @param from a tile on the path (usually the tracker's position).
+     */
+    public int nextStep(int from) {
+        int tile = this.currentTile;
+        if (tile == from || this.stamp.get(tile) != this.generation)
+            return from;
+        while (this.predecessor.get(tile) != from) {
+            if (tile == this.start)
+                return from;
+            tile = this.predecessor.get(tile);
+        }
+        return tile;
+    }
+
+    /** Open a tile (A*: this tile should be taken into consideration) */
+    private void open(int tile) {
+        if (!this.terrain.isWalkable(tile) || this.stamp.get(tile) == this.generation)
+            return;
+        this.stamp.set(tile, this.generation);
+        this.predecessor.set(tile, this.currentTile);
+        this.openList.add(tile, cost(tile));
+    }
+
+    /** Costs of a tile packed into one key: total cost first, distance to the destination second */
+    private long cost(int tile) {
+        int x = tile % this.width;
+        int y = tile / this.width;
+        int toStart = Math.abs(x - this.start % this.width) + Math.abs(y - this.start / this.width);
+        int toDestination = Math.abs(x - this.destination % this.width) + Math.abs(y - this.destination / this.width);
+        if (this.startLandmarks != null) {
+            toStart = Math.max(toStart, this.landmarks.lowerBound(tile, this.startLandmarks));
+            toDestination = Math.max(toDestination, this.landmarks.lowerBound(tile, this.destinationLandmarks));
+        }
+        return ((long) (toStart + toDestination) << 32) | toDestination;
+    }
+}
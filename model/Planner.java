@@ -0,0 +1,18 @@
+package model;
+
+/**
+ * The ways trackers can plan their path to the player.
+ */
+public enum Planner {
+
+    /** Every tracker runs its own A* search (see {@link PathFinder}). */
+    A_STAR,
+    /** One distance field rooted at the player is shared by all trackers (see {@link DistanceField}). */
+    DISTANCE_FIELD,
+    /** Every tracker keeps its search tree between turns and only repairs it (see {@link IncrementalPlanner}). */
+    INCREMENTAL,
+    /** Every tracker searches the graph of map clusters shared by all trackers (HPA*, see {@link ClusterGraph}). */
+    HIERARCHICAL,
+    /** Every tracker runs Jump Point Search, which skips along straight corridors (see {@link JumpPointPlanner}). */
+    JUMP_POINT
+}
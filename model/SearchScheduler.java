@@ -0,0 +1,181 @@
+package model;
+
+import java.util.List;
+
+/**
+ * Gives the trackers' searches (with {@link Planner#A_STAR}) a wall-clock
+ * budget per turn instead of a fixed number of steps each, see
+ * {@link World#setSearchScheduler(SearchScheduler)}. The trackers take turns
+ * in slices of {@link #SLICE} steps until every search has finished or the
+ * budget is used up; the tracker to go first changes from turn to turn, so
+ * none is always the one cut short.
+ *
+ * A search which runs out of time is paused and goes on from where it
+ * stopped in the next turn. Meanwhile its tracker keeps walking the last
+ * path it found. For that the searches run backwards, from the player's
+ * tile towards the tracker: the tree of predecessors stays valid while the
+ * tracker moves, only the tile it looks for changes, and once the search
+ * reaches the tracker the predecessors lead it to where the player was when
+ * the search started. A paused search is thrown away if a tile changes.
+ */
+public class SearchScheduler {
+
+    /** Steps a tracker's search takes before the next tracker's turn */
+    public static final int SLICE = 128;
+
+    private final long budget;
+    /** Tracker to go first in the next turn */
+    private int first;
+
+    /** Time used per turn (nanoseconds) */
+    private final Histogram used = new Histogram();
+    private long turns;
+    /** Turns which ended with searches left */
+    private long exhausted;
+    private long started;
+    private long finished;
+    private long paused;
+    private long resumed;
+    /** Paused searches thrown away because the map changed */
+    private long restarted;
+
+    /** Per tracker in the last turn: expansions, open list peak of its search, carried over? */
+    private int[] expanded = new int[0];
+    private int[] openListPeak = new int[0];
+    private boolean[] carriedOver = new boolean[0];
+
+    /**
+     * @param budget nanoseconds all searches of a turn may take together
+     * (the last slice may overrun it a little).
+     */
+    public SearchScheduler(long budget) {
+        if (budget <= 0)
+            throw new IllegalArgumentException("Invalid budget " + budget);
+        this.budget = budget;
+    }
+
+    public long getBudget() { return this.budget; }
+    public synchronized long getTurns() { return this.turns; }
+    /** Turns which ran out of time before all searches finished */
+    public synchronized long getExhausted() { return this.exhausted; }
+    public synchronized long getStarted() { return this.started; }
+    public synchronized long getFinished() { return this.finished; }
+    /** Times a search was carried over into the next turn */
+    public synchronized long getPaused() { return this.paused; }
+    public synchronized long getResumed() { return this.resumed; }
+    /** Paused searches started again because a tile changed */
+    public synchronized long getRestarted() { return this.restarted; }
+    /** Time used by the searches of a turn, in microseconds */
+    public Histogram.Summary getUsed() { return this.used.summarize(1e-3); }
+
+    /** Tiles the k-th tracker's search expanded in the last turn (see {@link WorldMetrics}) */
+    synchronized int getExpanded(int k) { return this.expanded[k]; }
+    /** Largest open list of the k-th tracker's search so far */
+    synchronized int getOpenListPeak(int k) { return this.openListPeak[k]; }
+    /** Did the k-th tracker's search run out of time in the last turn? */
+    synchronized boolean isCarriedOver(int k) { return this.carriedOver[k]; }
+
+    /** Share of the budget the searches of a turn used on average */
+    public synchronized double getUsage() {
+        return this.turns == 0 ? 0 : this.used.getMean() / this.budget;
+    }
+
+    /**
+     * Plans the paths of the trackers to the player's tile within the budget.
+     *
+     * @param components parts of the map, trackers in another part than the
+     * player do not search (null if they are not known).
+     */
+    synchronized void plan(List<Tracker> trackers, int player, Components components) {
+        long begin = System.nanoTime();
+        int count = trackers.size();
+        if (this.expanded.length < count) {
+            this.expanded = new int[count];
+            this.openListPeak = new int[count];
+            this.carriedOver = new boolean[count];
+        }
+        int active = 0;
+        for (int k = 0; k < count; k++) {
+            Tracker tracker = trackers.get(k);
+            int from = tracker.getX() + tracker.getY() * tracker.getMapWidth();
+            this.expanded[k] = 0;
+            this.openListPeak[k] = 0;
+            this.carriedOver[k] = false;
+            if (components != null && !components.isConnected(from, player)) {
+                tracker.setSearchPaused(false);
+                continue;
+            }
+            PathFinder pathFinder = tracker.getPathFinder();
+            if (tracker.canResumeSearch()) {
+                // Only the expansions of this turn count, the search's counter goes on from the last one
+                this.expanded[k] = -pathFinder.getExpanded();
+                pathFinder.retarget(from);
+                this.resumed++;
+            } else {
+                if (tracker.isSearchPaused())
+                    this.restarted++;
+                pathFinder.start(player, from);
+                tracker.setSearchPaused(true);
+                this.started++;
+            }
+            if (pathFinder.getFinished())
+                finish(tracker, from);
+            else
+                active++;
+        }
+
+        long deadline = begin + this.budget;
+        while (active > 0 && System.nanoTime() < deadline) {
+            for (int i = 0; i < count && active > 0; i++) {
+                Tracker tracker = trackers.get((this.first + i) % count);
+                if (!tracker.isSearchPaused())
+                    continue;
+                PathFinder pathFinder = tracker.getPathFinder();
+                for (int step = 0; step < SLICE && pathFinder.step(); step++)
+                    ;
+                if (pathFinder.getFinished()) {
+                    finish(tracker, tracker.getX() + tracker.getY() * tracker.getMapWidth());
+                    active--;
+                }
+                if (System.nanoTime() >= deadline)
+                    break;
+            }
+        }
+        if (count > 0)
+            this.first = (this.first + 1) % count;
+
+        for (int k = 0; k < count; k++) {
+            Tracker tracker = trackers.get(k);
+            int from = tracker.getX() + tracker.getY() * tracker.getMapWidth();
+            if (components != null && !components.isConnected(from, player))
+                continue;
+            PathFinder pathFinder = tracker.getPathFinder();
+            this.expanded[k] += pathFinder.getExpanded();
+            this.openListPeak[k] = pathFinder.getOpenListPeak();
+            this.carriedOver[k] = tracker.isSearchPaused();
+            if (this.carriedOver[k])
+                this.paused++;
+        }
+        if (active > 0)
+            this.exhausted++;
+        this.turns++;
+        this.used.record(System.nanoTime() - begin);
+    }
+
+    /** A search has finished: the tracker follows its result from now on */
+    private void finish(Tracker tracker, int from) {
+        PathFinder pathFinder = tracker.getPathFinder();
+        if (pathFinder.getDestinationReached())
+            tracker.getCachedPath().setReversed(pathFinder, from);
+        tracker.setSearchPaused(false);
+        this.finished++;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("budget %d us, %d turns, %.1f %% of the budget used, %d turns out of time, "
+                + "%d searches started, %d finished, %d paused, %d resumed, %d restarted",
+                this.budget / 1000, this.turns, 100 * getUsage(), this.exhausted, this.started, this.finished,
+                this.paused, this.resumed, this.restarted);
+    }
+}
@@ -0,0 +1,80 @@
+package model;
+
+/**
+ * The state of the world after a step, as the views see it. A snapshot never
+ * changes once it is published, so it can be read on any thread without
+ * locks. The terrain is shared with the world rather than copied; the number
+ * of modifications tells whether it changed since the snapshot was taken.
+ */
+public final class Snapshot {
+
+    private final int iteration;
+    private final int playerX;
+    private final int playerY;
+    private final int[] trackerX;
+    private final int[] trackerY;
+    private final int destination;
+    private final int difficulty;
+    private final boolean running;
+    private final boolean won;
+    private final Terrain terrain;
+    private final int modifications;
+
+    Snapshot(int iteration, int playerX, int playerY, int[] trackerX, int[] trackerY, int destination,
+            int difficulty, boolean running, boolean won, Terrain terrain) {
+        this.iteration = iteration;
+        this.playerX = playerX;
+        this.playerY = playerY;
+        this.trackerX = trackerX;
+        this.trackerY = trackerY;
+        this.destination = destination;
+        this.difficulty = difficulty;
+        this.running = running;
+        this.won = won;
+        this.terrain = terrain;
+        this.modifications = terrain.getModifications();
+    }
+
+    /** Turns played since the last restart */
+    public int getIteration() { return this.iteration; }
+    public int getWidth() { return this.terrain.getWidth(); }
+    public int getHeight() { return this.terrain.getHeight(); }
+    public int getPlayerX() { return this.playerX; }
+    public int getPlayerY() { return this.playerY; }
+    public int getTrackerCount() { return this.trackerX.length; }
+    public int getTrackerX(int i) { return this.trackerX[i]; }
+    public int getTrackerY(int i) { return this.trackerY[i]; }
+    public int getDestination() { return this.destination; }
+    /** Difficulty of the game (trackers wanted, there may be fewer) */
+    public int getDifficulty() { return this.difficulty; }
+    public boolean getRunning() { return this.running; }
+    public boolean getWon() { return this.won; }
+    /** The map (shared with the world, it may have changed since, see {@link #getModifications()}) */
+    public Terrain getTerrain() { return this.terrain; }
+    /** Terrain modifications when the snapshot was taken */
+    public int getModifications() { return this.modifications; }
+
+    /**
+     * Hash of the state: turn, positions, difficulty, whether the game runs
+     * and terrain modifications. Equal states have equal hashes, so a replay
+     * can tell whether it still follows the recorded game.
+     */
+    public long getStateHash() {
+        long hash = mix(0, this.iteration);
+        hash = mix(hash, this.playerX);
+        hash = mix(hash, this.playerY);
+        hash = mix(hash, this.trackerX.length);
+        for (int i = 0; i < this.trackerX.length; i++) {
+            hash = mix(hash, this.trackerX[i]);
+            hash = mix(hash, this.trackerY[i]);
+        }
+        hash = mix(hash, this.difficulty);
+        hash = mix(hash, (this.running ? 1 : 0) | (this.won ? 2 : 0));
+        hash = mix(hash, this.modifications);
+        return hash ^ (hash >>> 32);
+    }
+
+    private static long mix(long hash, int value) {
+        return (hash ^ value) * 0x9E3779B97F4A7C15L;
+    }
+}
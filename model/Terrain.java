@@ -0,0 +1,101 @@
+package model;
+
+import java.util.zip.CRC32;
+
+/**
+ * The tile types of a map, one byte per tile (type 0 is a wall). Tiles are
+ * numbered row by row: tile = x + y * width. The whole map is kept on the
+ * heap; maps too large for that are opened as a {@link ChunkedTerrain}.
+ */
+public class Terrain {
+
+    private final int width;
+    private final int height;
+    /** Tile types (unsigned), null if a subclass stores them */
+    private final byte[] types;
+    /** Number of tiles changed since the map was loaded */
+    private int modifications;
+    /** Connected parts of the map, computed on first use */
+    private volatile Components components;
+
+    public Terrain(int width, int height, byte[] types) {
+        if (width <= 0 || height <= 0 || (long) width * height != types.length)
+            throw new IllegalArgumentException("Map has " + types.length + " tiles, expected " + width + "x" + height);
+        this.width = width;
+        this.height = height;
+        this.types = types;
+    }
+
+    /** For subclasses which store the tile types themselves */
+    protected Terrain(int width, int height) {
+        if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Invalid map size " + width + "x" + height);
+        this.width = width;
+        this.height = height;
+        this.types = null;
+    }
+
+    public int getWidth() { return this.width; }
+    public int getHeight() { return this.height; }
+    public int getSize() { return this.width * this.height; }
+    public int getType(int tile) { return this.types[tile] & 0xFF; }
+    public int getType(int x, int y) { return getType(x + y * this.width); }
+    public boolean isWalkable(int tile) { return this.types[tile] != 0; }
+    /** Number of tile changes so far, lets views tell whether anything they cached is stale */
+    public int getModifications() { return this.modifications; }
+
+    /** CRC32 of the tile types, tells whether saved data (landmark tables, input logs) belongs to this map */
+    public int getChecksum() {
+        CRC32 crc = new CRC32();
+        if (this.types != null) {
+            crc.update(this.types);
+        } else {
+            byte[] row = new byte[this.width];
+            for (int y = 0; y < this.height; y++) {
+                for (int x = 0; x < row.length; x++)
+                    row[x] = (byte) getType(x, y);
+                crc.update(row);
+            }
+        }
+        return (int) crc.getValue();
+    }
+
+    /**
+     * The connected parts of the map, computed the first time they are asked
+     * for and kept up to date when tiles change. Null for maps which are not
+     * kept on the heap: a label per tile would take four times their memory.
+     */
+    public Components getComponents() {
+        if (this.types == null)
+            return null;
+        Components components = this.components;
+        if (components == null) {
+            synchronized (this) {
+                if (this.components == null)
+                    this.components = new Components(this);
+                components = this.components;
+            }
+        }
+        return components;
+    }
+
+    /** Can several threads read the map at the same time? */
+    boolean isConcurrent() { return true; }
+
+    /** The raw tile types, used to write the map without copying it (null if a subclass stores them) */
+    byte[] getTypes() { return this.types; }
+
+    void setType(int tile, int type) {
+        if (type < 0 || type > 255)
+            throw new IllegalArgumentException("Invalid tile type " + type);
+        store(tile, (byte) type);
+        this.modifications++;
+        if (this.components != null)
+            this.components.tileChanged(tile);
+    }
+
+    /** Write a tile type (subclasses which store the tile types themselves override this) */
+    void store(int tile, byte type) {
+        this.types[tile] = type;
+    }
+}
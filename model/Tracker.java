@@ -1,7 +1,5 @@
 package model;
 
-import java.util.ArrayList;
-
 /**
  * Class for storing tracker's positions and costs/paths to player
  */
@@ -13,11 +11,23 @@ public class Tracker {
     private int y;
 
     private int mapWidth;
-    private ArrayList<Tile> map = new ArrayList<Tile>();
-    private ArrayList<Tile> openList = new ArrayList<Tile>();
-    private ArrayList<Tile> checkedTiles = new ArrayList<Tile>();
-    private Tile currentTile;
-    private boolean destinationReached = false;
+    private Terrain terrain;
+    /** Created on first use, trackers following a distance field never need it */
+    private PathFinder pathFinder;
+    /** Created on first use, only needed by Planner.INCREMENTAL */
+    private IncrementalPlanner incrementalPlanner;
+    /** Created on first use, only needed by Planner.HIERARCHICAL */
+    private HierarchicalPlanner hierarchicalPlanner;
+    /** Created on first use, only needed by Planner.JUMP_POINT */
+    private JumpPointPlanner jumpPointPlanner;
+    /** Created on first use, only needed with a PathCache */
+    private CachedPath cachedPath;
+    /** Landmark tables of the map, shared with the world (null: Manhattan distances only) */
+    private Landmarks landmarks;
+    /** Has the path finder a search the {@link SearchScheduler} paused, to be resumed next turn? */
+    private boolean searchPaused;
+    /** Terrain modifications the paused search was started on */
+    private int searchModifications;
 
     public Tracker(int width, int height, int x, int y) {
         this.width = width;
@@ -31,7 +41,6 @@ public class Tracker {
         this.height = 0;
         this.x = x;
         this.y = y;
-        this.currentTile = new Tile(x, y, 1);
     }
 
     public Tracker() {
@@ -39,7 +48,6 @@ public class Tracker {
         this.height = 0;
         this.x = 0;
         this.y = 0;
-        this.currentTile = new Tile(0, 0, 1);
     }
 
     public int getWidth() { return this.width; }
@@ -47,55 +55,148 @@ public class Tracker {
     public int getX() { return this.x; }
     public int getY() { return this.y; }
     public int getMapWidth() { return this.mapWidth; }
-    public ArrayList<Tile> getMap() { return this.map; }
-    public ArrayList<Tile> getCheckedTiles() { return this.checkedTiles; }
-    public ArrayList<Tile> getOpenList() { return this.openList; }
-    public Tile getCurrenTile() { return this.currentTile; }
-    public boolean getDestinationReached() { return this.destinationReached; }
+    public PathFinder getPathFinder() {
+        if (this.pathFinder == null) {
+            this.pathFinder = new PathFinder(this.terrain);
+            this.pathFinder.setLandmarks(this.landmarks);
+        }
+        return this.pathFinder;
+    }
+    public IncrementalPlanner getIncrementalPlanner() {
+        if (this.incrementalPlanner == null)
+            this.incrementalPlanner = new IncrementalPlanner(this.terrain);
+        return this.incrementalPlanner;
+    }
+    /** The planner searching the given cluster graph (shared by all trackers of a world) */
+    public HierarchicalPlanner getHierarchicalPlanner(ClusterGraph graph) {
+        if (this.hierarchicalPlanner == null || this.hierarchicalPlanner.getGraph() != graph) {
+            this.hierarchicalPlanner = new HierarchicalPlanner(graph);
+            this.hierarchicalPlanner.setLandmarks(this.landmarks);
+        }
+        return this.hierarchicalPlanner;
+    }
+    /** The planner jumping through the given walkability bits (shared by all trackers of a world) */
+    public JumpPointPlanner getJumpPointPlanner(BitGrid grid) {
+        if (this.jumpPointPlanner == null || this.jumpPointPlanner.getGrid() != grid) {
+            this.jumpPointPlanner = new JumpPointPlanner(grid);
+            this.jumpPointPlanner.setLandmarks(this.landmarks);
+        }
+        return this.jumpPointPlanner;
+    }
+    public CachedPath getCachedPath() {
+        if (this.cachedPath == null)
+            this.cachedPath = new CachedPath(this.terrain);
+        return this.cachedPath;
+    }
+    public boolean getDestinationReached() {
+        if (this.cachedPath != null && this.cachedPath.isActive())
+            return true;
+        return this.pathFinder != null && this.pathFinder.getDestinationReached();
+    }
 
     public void setLocation(int x, int y) {
         this.x = x;
         this.y = y;
     }
-    public void setMap(ArrayList<Tile> map, int width) { 
-        this.mapWidth = width;
-        this.map = new ArrayList<Tile>(map);
-    }
-    /** Set tile checked (A*: this tile has already been checked) and remove it from the lists of tiles to check */
-    public void setChecked(int tile) { 
-        this.checkedTiles.add(this.map.get(tile));
-        this.openList.remove(this.map.get(tile));
-    }
-    /** Set tile open (A*: this tile sould be taken into consideration) */
-    public void setOpen(int tile) {
-        if (this.map.get(tile).getOpen() == false && this.map.get(tile).getChecked() == false && this.map.get(tile).getFcost() != Double.POSITIVE_INFINITY) {
-            this.map.get(tile).setOpen(true);
-            this.map.get(tile).setPredecessor(this.currentTile);
-            this.openList.add(this.map.get(tile));
+    /** Set the map the tracker searches on. The map is shared, only the search state belongs to the tracker. */
+    public void setMap(Terrain terrain) {
+        this.mapWidth = terrain.getWidth();
+        this.terrain = terrain;
+        this.pathFinder = null;
+        this.incrementalPlanner = null;
+        this.hierarchicalPlanner = null;
+        this.jumpPointPlanner = null;
+        this.cachedPath = null;
+    }
+    /** Guide the tracker's searches with landmark tables of its map (null for Manhattan distances only) */
+    public void setLandmarks(Landmarks landmarks) {
+        this.landmarks = landmarks;
+        if (this.pathFinder != null)
+            this.pathFinder.setLandmarks(landmarks);
+        if (this.hierarchicalPlanner != null)
+            this.hierarchicalPlanner.setLandmarks(landmarks);
+        if (this.jumpPointPlanner != null)
+            this.jumpPointPlanner.setLandmarks(landmarks);
+    }
+
+    /** Start a new search from the tracker's position to the given tile */
+    public void startSearch(int destinationX, int destinationY) {
+        this.getPathFinder().start(this.x + this.y * this.mapWidth, destinationX + destinationY * this.mapWidth);
+    }
+
+    /** Notify the tracker that the type of a tile has changed */
+    public void tileChanged(int tile) {
+        if (this.incrementalPlanner != null)
+            this.incrementalPlanner.tileChanged(tile);
+    }
+
+    /**
+     * Plan the way to the given tile with the help of a path cache: keep
+     * following the tracker's own path if it still leads there, else take a
+     * path from the cache, else search.
+     *
+     * @param maxIterations steps the search may take at most.
+     * @return true if the tracker searched (see {@link #getPathFinder()}),
+     * false if it reused a path.
+     */
+    public boolean search(int destinationX, int destinationY, PathCache cache, int maxIterations) {
+        int start = this.x + this.y * this.mapWidth;
+        int destination = destinationX + destinationY * this.mapWidth;
+        CachedPath path = this.getCachedPath();
+        if (path.reuse(start, destination)) {
+            cache.reused();
+            return false;
         }
+        if (cache.get(start, destination, path))
+            return false;
+        path.clear();
+        PathFinder pathFinder = this.getPathFinder();
+        pathFinder.start(start, destination);
+        for (int it = 0; !pathFinder.getFinished() && it < maxIterations; it++)
+            pathFinder.step();
+        if (pathFinder.getDestinationReached())
+            path.set(pathFinder, start, destination, cache);
+        return true;
     }
-    /** Calculate and update costs of a tile */
-    public void setCost(int tile, int destinationX, int destinationY) {
-        int hCost = Math.abs(this.map.get(tile).getX() - this.x) + Math.abs(this.map.get(tile).getY() - this.y);
-		int gCost = Math.abs(this.map.get(tile).getX() - destinationX) + Math.abs(this.map.get(tile).getY() - destinationY);
 
-		this.map.get(tile).setGcost(gCost);
-		this.map.get(tile).setHcost(hCost);
+    /** Move one tile along the path found by the last search */
+    public void step() {
+        if (this.cachedPath != null && this.cachedPath.isActive()) {
+            int next = this.cachedPath.nextStep(this.x + this.y * this.mapWidth);
+            this.setLocation(next % this.mapWidth, next / this.mapWidth);
+            return;
+        }
+        int next = this.getPathFinder().nextStep(this.x + this.y * this.mapWidth);
+        this.setLocation(next % this.mapWidth, next / this.mapWidth);
     }
-    public void setCurrentTile(Tile tile) { this.currentTile = tile; }
-    public void setDestinationReached(boolean state) { this.destinationReached = state; }
 
+    /** Forget the last search (the incremental planner keeps its search tree, it is repaired instead, a paused search is kept) */
     public void reset() {
-        this.destinationReached = false;
-        this.openList.clear();
-        this.checkedTiles.clear();
-        this.currentTile = this.map.get(this.x + this.y * this.mapWidth);
-        for (int i = 0; i < this.map.size(); i++)
-            this.map.get(i).reset();
+        if (this.pathFinder != null && !this.searchPaused)
+            this.pathFinder.reset();
+    }
+
+    /** Is a search paused by the {@link SearchScheduler} waiting to be resumed? */
+    boolean isSearchPaused() {
+        return this.searchPaused;
+    }
+
+    /** Can the paused search go on? (not if the map changed since it started) */
+    boolean canResumeSearch() {
+        return this.searchPaused && this.searchModifications == this.terrain.getModifications();
+    }
+
+    /** Mark the path finder's search as paused (remembering the map it started on) or as done */
+    void setSearchPaused(boolean paused) {
+        this.searchPaused = paused;
+        this.searchModifications = this.terrain.getModifications();
     }
 
-    public void reset(ArrayList<Tile> map) {
-        this.map = new ArrayList<Tile>(map);
-        this.reset();
+    /** Move one tile along the last path a scheduled search found, stay if there is none (or the map changed since) */
+    void followLastPath() {
+        if (this.cachedPath == null || !this.cachedPath.isCurrent())
+            return;
+        int next = this.cachedPath.nextStep(this.x + this.y * this.mapWidth);
+        this.setLocation(next % this.mapWidth, next / this.mapWidth);
     }
 }
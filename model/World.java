@@ -1,17 +1,19 @@
 package model;
 
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.RecursiveAction;
 
-import view.GraphicView;
+import view.AsyncView;
 import view.View;
 
 /**
  * The world is our model. It saves the bare minimum of information required to
  * accurately reflect the state of the game. Note how this does not know
  * anything about graphics.
+ *
+ * Methods which change the world hold its lock. After every step the world
+ * publishes an immutable {@link Snapshot}, which views read on their own
+ * threads without locking.
  */
 public class World {
 
@@ -20,8 +22,10 @@ public class World {
 	public static final int DIR_DOWN = 1;
 	public static final int DIR_UP = 0;
 
-	/* Maximum iterations for a while loop */
+	/* Maximum iterations for a while loop (per tracker and turn) */
 	static final int MAX_ITERATIONS = 10_000;
+	/** Smallest map on which trackers plan in parallel (on small maps a search is cheaper than a task) */
+	static final int PARALLEL_MIN_TILES = 64 * 64;
 
 	/** The world's width. */
 	private final int width;
@@ -35,35 +39,77 @@ public class World {
 	private ArrayList<Tracker> trackers = new ArrayList<Tracker>();
 	/* Difficulty (number of trackers) */
 	private int difficulty;
+	/* Maximum number of trackers */
+	private int maxTrackers = 3;
+	/* Next tile to look at when placing additional trackers */
+	private int spawnTile = -1;
+	/** How trackers plan their path to the player */
+	private Planner planner = Planner.A_STAR;
+	/** Distances to the player shared by all trackers (Planner.DISTANCE_FIELD) */
+	private DistanceField distanceField;
+	/** Clusters of the map shared by all trackers (Planner.HIERARCHICAL) */
+	private ClusterGraph clusterGraph;
+	/** Walkable tiles as bits, shared by the trackers for Planner.JUMP_POINT */
+	private BitGrid bitGrid;
+	/** Landmark tables guiding the searches (null: Manhattan distances only) */
+	private Landmarks landmarks;
+	/** Paths shared by the trackers (null: every tracker searches every turn) */
+	private PathCache pathCache;
+	/** Shares a time budget per turn among the trackers' searches (null: a budget of steps per tracker) */
+	private SearchScheduler scheduler;
+	/** Measurements of the turns and searches (null: nothing is measured) */
+	private WorldMetrics metrics;
+	/** Log of the commands played (null: nothing is recorded) */
+	private InputRecorder recorder;
 	/* Tracker speed (tiles per round) */
 	private int speed;
-	/* Count iterations */
+	/* Count iterations (turns played since the last restart) */
 	private int iteration;
-	/** Labyrinth map */
-	private List<Integer> rawMap = new ArrayList<Integer>();
-	private ArrayList<Tile> map = new ArrayList<Tile>();
+	/** Labyrinth map (tile type of each cell, shared with the trackers and views) */
+	private final Terrain terrain;
+	/** Connected parts of the map, shared with other worlds on it (null for maps not kept on the heap) */
+	private final Components components;
 	/** Start */
 	private int start;
 	/** Destination */
 	private int destination;
 	/** Is the game currently running? */
 	private boolean running;
+	/** Has the player reached the destination? */
+	private boolean won;
+	/** Headless worlds have no views and print nothing (simulations, benchmarks) */
+	private boolean headless;
+	/** Do trackers plan their paths in parallel? (a single core gains nothing) */
+	private boolean parallel = Runtime.getRuntime().availableProcessors() > 1;
+
+	/** State after the last step, read by the views (on any thread) */
+	private volatile Snapshot snapshot;
 
 	/** Set of views registered to be notified of world updates. */
 	private final ArrayList<View> views = new ArrayList<>();
 
 	/**
 	 * Creates a new world with the given size.t
+	 *
+	 * @param map comma separated tile types.
 	 */
 	public World(int width, int height, String map, int start, int destination, int difficulty) throws Exception {
-		// Normally, we would check the arguments for proper values
-		this.width = width;
-		this.height = height;
-		// Load map (easier to implement the pathfinding with tile objects although I would't do this in an actual game)
-		// TODO: Use FileReader instead
-		this.rawMap = Arrays.stream(map.split(",")).map(Integer::parseInt).collect(Collectors.toList());
-		for (int i = 0; i < width * height; i++)
-			this.map.add(new Tile(i % width, (int)(i / width), this.rawMap.get(i)));
+		this(MapLoader.parse(map, width, height), start, destination, difficulty);
+	}
+
+	/**
+	 * Creates a new world on a map loaded by the {@link MapLoader}. Changes made
+	 * with {@link #setTileType(int, int, int)} are written to the terrain.
+	 *
+	 * @throws IllegalArgumentException if there is no path from the start to the destination.
+	 */
+	public World(Terrain terrain, int start, int destination, int difficulty) {
+		this.width = terrain.getWidth();
+		this.height = terrain.getHeight();
+		this.terrain = terrain;
+		this.components = terrain.getComponents();
+		if (this.components != null && !this.components.isConnected(start, destination))
+			throw new IllegalArgumentException("The destination " + destination + " cannot be reached from the start " + start);
 
 		// Initialise variables
 		this.playerX = start % width;
@@ -76,8 +122,9 @@ public class World {
 		this.running = true;
 
 		// Generate trackers
-		for (int i = 0; i < difficulty && i < 3; i++)
-			this.addTracker(i+3, 23);
+		for (int i = 0; i < difficulty && i < this.maxTrackers; i++)
+			this.spawnTracker(i+3, 23);
+		publish();
 	}
 
 	///////////////////////////////////////////////////////////////////////////
@@ -99,19 +146,157 @@ public class World {
 		return this.trackers.get(i);
 	}
 
+	public int getTrackerCount() {
+		return this.trackers.size();
+	}
+
+	/**
+	 * The state after the last step. Consistent (unlike reading the getters of a
+	 * world which is being changed) and safe to read on any thread.
+	 */
+	public Snapshot getSnapshot() {
+		return this.snapshot;
+	}
+
+	public Planner getPlanner() {
+		return this.planner;
+	}
+
+	/**
+	 * Changes how the trackers plan their path to the player. With
+	 * {@link Planner#DISTANCE_FIELD} a turn costs the same no matter how many
+	 * trackers there are, which makes levels with hundreds of trackers possible
+	 * (see {@link #setMaxTrackers(int)}).
+	 */
+	public synchronized void setPlanner(Planner planner) {
+		this.planner = planner;
+		if (planner == Planner.DISTANCE_FIELD && this.distanceField == null)
+			this.distanceField = new DistanceField(this.terrain);
+		if (planner == Planner.HIERARCHICAL && this.clusterGraph == null)
+			this.clusterGraph = new ClusterGraph(this.terrain);
+		if (planner == Planner.JUMP_POINT && this.bitGrid == null)
+			this.bitGrid = new BitGrid(this.terrain);
+	}
+
+	public Landmarks getLandmarks() {
+		return this.landmarks;
+	}
+
+	/**
+	 * Guides the trackers' searches (A*, hierarchical and jump point) with
+	 * landmark tables of this world's map, see {@link Landmarks#forMap}. The
+	 * tables are no longer used once a tile changes; null goes back to the
+	 * Manhattan distance.
+	 */
+	public synchronized void setLandmarks(Landmarks landmarks) {
+		this.landmarks = landmarks;
+		for (int i = 0; i < this.trackers.size(); i++)
+			this.trackers.get(i).setLandmarks(landmarks);
+	}
+
+	public PathCache getPathCache() {
+		return this.pathCache;
+	}
+
+	/**
+	 * Lets the trackers (with {@link Planner#A_STAR}) keep following their
+	 * path while the player stays where it ends or moves next to it, and share
+	 * the paths they find. The cache's counters tell how many searches that
+	 * saved. null goes back to searching every turn. The trackers search one
+	 * after the other while a cache is set: in parallel, which paths one
+	 * tracker finds in the cache would depend on when another stored its own.
+	 */
+	public synchronized void setPathCache(PathCache pathCache) {
+		if (pathCache != null && pathCache.getTerrain() != this.terrain)
+			throw new IllegalArgumentException("Path cache belongs to a different map");
+		this.pathCache = pathCache;
+		for (int i = 0; i < this.trackers.size(); i++)
+			this.trackers.get(i).getCachedPath().clear();
+	}
+
+	public SearchScheduler getSearchScheduler() {
+		return this.scheduler;
+	}
+
+	/**
+	 * Gives the trackers' searches (with {@link Planner#A_STAR}) a time budget
+	 * per turn, shared among them, instead of {@link #MAX_ITERATIONS} steps
+	 * each. A search which does not finish in time goes on in the next turn
+	 * while its tracker follows the last path it found. The path cache and
+	 * the parallel searches are not used meanwhile. The metrics and the
+	 * flight recorder get every tracker's expansions of the turn; a search
+	 * carried over counts as one which used up its budget. null goes back to
+	 * the budget of steps.
+	 */
+	public synchronized void setSearchScheduler(SearchScheduler scheduler) {
+		this.scheduler = scheduler;
+		for (int i = 0; i < this.trackers.size(); i++) {
+			Tracker tracker = this.trackers.get(i);
+			tracker.setSearchPaused(false);
+			tracker.getCachedPath().clear();
+		}
+	}
+
+	public WorldMetrics getMetrics() {
+		return this.metrics;
+	}
+
+	/**
+	 * Starts measuring the turns, the trackers' searches and the views'
+	 * updates, see {@link WorldMetrics#register(String)} to watch them through
+	 * JMX. null stops measuring; then nothing but a null check per turn and
+	 * tracker is left.
+	 */
+	public synchronized void setMetrics(WorldMetrics metrics) {
+		this.metrics = metrics;
+		for (int i = 0; i < this.views.size(); i++)
+			if (this.views.get(i) instanceof AsyncView)
+				((AsyncView) this.views.get(i)).setMetrics(metrics);
+	}
+
+	public InputRecorder getRecorder() {
+		return this.recorder;
+	}
+
+	/**
+	 * Records every command from now on (moves, standing still, restarts and
+	 * changes of the difficulty) with a hash of the state it led to, so the
+	 * game can be replayed, see {@link InputLog}. Changes of the map are not
+	 * recorded. null stops recording (the recorder stays open).
+	 */
+	public synchronized void setRecorder(InputRecorder recorder) {
+		this.recorder = recorder;
+	}
+
+	public int getMaxTrackers() {
+		return this.maxTrackers;
+	}
+
+	/**
+	 * Changes the maximum number of trackers (3 by default) and adds trackers
+	 * until the difficulty or the new maximum is reached.
+	 */
+	public synchronized void setMaxTrackers(int maxTrackers) {
+		this.maxTrackers = maxTrackers;
+		while (this.trackers.size() < Math.min(this.difficulty, maxTrackers))
+			this.addTracker();
+		publish();
+	}
+
+	public int getStart() {
+		return this.start;
+	}
+
 	public int getDestination() {
 		return this.destination;
 	}
 
-	public void setPlayerX(int playerX) {
-		switch(this.map.get(this.playerY*this.width + playerX).getType()) {
-			case 0:
-				break;
-			default:
-				this.playerX = playerX % this.width;
-				break;
-		}
-		
+	public int getDifficulty() {
+		return this.difficulty;
+	}
+
+	public synchronized void setPlayerX(int playerX) {
+		moveX(playerX);
 		updateViews();
 	}
 
@@ -119,66 +304,176 @@ public class World {
 		return playerY;
 	}
 
-	public ArrayList<Tile> getMap() {
-		return new ArrayList<Tile>(this.map);
+	/**
+	 * Changes the type of a tile (type 0 is a wall). Trackers using the
+	 * incremental planner repair their search trees on the next turn.
+	 */
+	public synchronized void setTileType(int x, int y, int type) {
+		int tile = x + y * this.width;
+		this.terrain.setType(tile, type);
+		if (this.clusterGraph != null)
+			this.clusterGraph.tileChanged(tile);
+		if (this.bitGrid != null)
+			this.bitGrid.tileChanged(tile);
+		for (int i = 0; i < this.trackers.size(); i++)
+			this.trackers.get(i).tileChanged(tile);
+
+		updateViews();
+	}
+
+	/** The map, shared with the trackers and views (read only, use {@link #setTileType(int, int, int)} to change it) */
+	public Terrain getTerrain() {
+		return this.terrain;
 	}
 
 	public boolean getRunning() {
 		return this.running;
 	}
 
-	public void setPlayerY(int playerY) {
-		switch(this.map.get(playerY*this.width + this.playerX).getType()) {
+	/** Did the player reach the destination? (the trackers have won if the game stopped otherwise) */
+	public boolean getWon() {
+		return this.won;
+	}
+
+	/** Number of turns played since the last restart */
+	public int getIteration() {
+		return this.iteration;
+	}
+
+	public boolean getParallel() {
+		return this.parallel;
+	}
+
+	/**
+	 * Trackers plan their paths in parallel (on the common fork-join pool) by
+	 * default on machines with several cores, if the map is large enough and
+	 * there is no path cache (see {@link #setPathCache(PathCache)}). Turn
+	 * this off when the worlds themselves run in parallel, e.g. in the
+	 * {@code BatchRunner}.
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	public boolean getHeadless() {
+		return this.headless;
+	}
+
+	/**
+	 * A headless world does not update any views and does not print anything.
+	 * Used to simulate games without a user interface.
+	 */
+	public void setHeadless(boolean headless) {
+		this.headless = headless;
+	}
+
+	public synchronized void setPlayerY(int playerY) {
+		moveY(playerY);
+		updateViews();
+	}
+
+	///////////////////////////////////////////////////////////////////////////
+	// Player Management
+
+	/** Move the player to the given column unless there is a wall (does not update the views) */
+	private void moveX(int playerX) {
+		// Leaving the map is like walking into a wall
+		if (playerX < 0 || playerX >= this.width)
+			playerX = this.playerX;
+		switch(this.terrain.getType(playerX, this.playerY)) {
 			case 0:
 				break;
 			default:
-				this.playerY = playerY % this.height;
+				this.playerX = playerX % this.width;
 				break;
 		}
-		
-		updateViews();
 	}
 
-	///////////////////////////////////////////////////////////////////////////
-	// Player Management
+	/** Move the player to the given row unless there is a wall (does not update the views) */
+	private void moveY(int playerY) {
+		// Leaving the map is like walking into a wall
+		if (playerY < 0 || playerY >= this.height)
+			playerY = this.playerY;
+		switch(this.terrain.getType(this.playerX, playerY)) {
+			case 0:
+				break;
+			default:
+				this.playerY = playerY % this.height;
+				break;
+		}
+	}
 	
 	/**
-	 * Moves the player along the given direction.
+	 * Moves the player along the given direction and lets the trackers follow.
+	 * The views are updated once, after the whole turn.
 	 * 
 	 * @param direction where to move. 1 up, 2 down, 3, left, 4 right
 	 */
-	public void movePlayer(int direction) {	
+	public synchronized void movePlayer(int direction) {	
 		// The direction tells us exactly how much we need to move along
 		// every direction
 		if (this.running) {
-			setPlayerX(getPlayerX() + Direction.getDeltaX(direction));
-			setPlayerY(getPlayerY() + Direction.getDeltaY(direction));
+			moveX(getPlayerX() + Direction.getDeltaX(direction));
+			moveY(getPlayerY() + Direction.getDeltaY(direction));
+			playTurn();
+		}
+		record(direction);
+	}
 
-			// Check if the trackers have won
-			for (int i = 0; i < this.trackers.size(); i++) {
-				int currentX = this.trackers.get(i).getX();
-				int currentY = this.trackers.get(i).getY();
+	/**
+	 * Lets the trackers move while the player stands still (a tick of the
+	 * real-time game without a key press).
+	 */
+	public synchronized void standStill() {
+		if (this.running)
+			playTurn();
+		record(InputLog.STAND_STILL);
+	}
 
-				if (this.playerX == currentX && this.playerY == currentY) {
+	/** The trackers' part of a turn, after the player has moved */
+	private void playTurn() {
+		WorldMetrics metrics = this.metrics;
+		long begin = metrics != null ? System.nanoTime() : 0;
+		WorldEvents.Turn event = new WorldEvents.Turn();
+		event.begin();
+		this.iteration++;
+
+		// Check if the trackers have won
+		for (int i = 0; i < this.trackers.size(); i++) {
+			int currentX = this.trackers.get(i).getX();
+			int currentY = this.trackers.get(i).getY();
+
+			if (this.playerX == currentX && this.playerY == currentY) {
+				if (!this.headless)
 					System.out.println("Game Over!");
-					this.running = false;
-				}
-
-				this.trackers.get(i).reset();
+				this.running = false;
 			}
 
-			// Update trackers
-			this.updateCosts();
-			this.search();
-			for (int i = 0; i < this.speed; i++)
-				this.trackPath();
+			this.trackers.get(i).reset();
+		}
+
+		// Update trackers
+		this.search();
+		for (int i = 0; i < this.speed; i++)
+			this.trackPath();
 
-			// Check if player has won
-			if (this.playerX == this.destination % this.width && this.playerY == (int) (this.destination / this.height))
-				{
+		// Check if player has won
+		if (this.running && this.playerX == this.destination % this.width && this.playerY == (int) (this.destination / this.width))
+			{
+				if (!this.headless)
 					System.out.println("Good Job!");
-					this.running = false;
-			}
+				this.running = false;
+				this.won = true;
+		}
+
+		updateViews();
+		if (metrics != null)
+			metrics.recordTurn(System.nanoTime() - begin);
+		if (event.shouldCommit()) {
+			describe(event);
+			event.iteration = this.iteration;
+			event.running = this.running;
+			event.commit();
 		}
 	}
 
@@ -188,86 +483,207 @@ public class World {
 	private void addTracker(int x, int y) {
 		// No idea how to add this to the GraphicView
 		this.trackers.add(new Tracker(x, y));
-		ArrayList<Tile> trackerMap = new ArrayList<Tile>();
-		for (int j = 0; j < width * height; j++) 
-			trackerMap.add(new Tile(j % width, (int)(j / width), this.rawMap.get(j)));
-		this.trackers.get(this.trackers.size()-1).setMap(trackerMap, this.width);
+		this.trackers.get(this.trackers.size()-1).setMap(this.terrain);
+		this.trackers.get(this.trackers.size()-1).setLandmarks(this.landmarks);
 	}
+
 	/**
-	 * For each tracker, update the costs of each tile.
+	 * Adds a tracker at the given position, or on the next free walkable tile
+	 * if the position is not walkable (or not part of the map at all).
 	 */
-	private void updateCosts() {
-		for (int k = 0; k < this.trackers.size(); k++)
-			for (int i = 0; i < this.width * this.height; i++) {
-				switch (this.map.get(i).getType()) {
-					case 0:
-						this.map.get(i).setGcost(Double.POSITIVE_INFINITY);
-						this.map.get(i).setHcost(Double.POSITIVE_INFINITY);
-						break;
-					default:
-						this.trackers.get(k).setCost(i, this.playerX, this.playerY);
-						break;
-				}
-			}
+	private void spawnTracker(int x, int y) {
+		if (x >= 0 && x < this.width && y >= 0 && y < this.height && this.terrain.isWalkable(x + y * this.width))
+			this.addTracker(x, y);
+		else
+			this.addTracker();
+	}
+
+	/**
+	 * Adds a tracker on the next free walkable tile, starting at the bottom of the map.
+	 */
+	private void addTracker() {
+		int tiles = this.width * this.height;
+		for (int i = 0; i < tiles; i++) {
+			this.spawnTile = (this.spawnTile - 1 + tiles) % tiles;
+			if (this.terrain.isWalkable(this.spawnTile) && this.spawnTile != this.start)
+				break;
+		}
+		this.addTracker(this.spawnTile % this.width, this.spawnTile / this.width);
 	}
 
 	/**
 	 * For each tracker, determine "shortest" path to the player using a slightly tweaked A* algorithm.
+	 * Every tracker searches on its own, with a budget of MAX_ITERATIONS steps, so
+	 * the trackers can plan in parallel and still find the same paths as one
+	 * after the other. All searches are done when this returns, unless a
+	 * {@link SearchScheduler} gives them a time budget instead.
+	 * Called by {@link #movePlayer(int)}, public so the benchmarks can measure it on its own.
 	 */
-	private void search() {
-		int it = 0;
+	public synchronized void search() {
+		WorldMetrics metrics = this.metrics;
+		long begin = metrics != null ? System.nanoTime() : 0;
+		WorldEvents.Search event = new WorldEvents.Search();
+		event.begin();
+		boolean parallel = false;
+		if (this.planner == Planner.DISTANCE_FIELD) {
+			this.distanceField.compute(this.playerX + this.playerY * this.width);
+		} else if (this.scheduler != null && this.planner == Planner.A_STAR) {
+			// The searches share the turn: each tracker's event lasts as long as all of them
+			WorldEvents.TrackerSearch[] events = new WorldEvents.TrackerSearch[this.trackers.size()];
+			for (int k = 0; k < events.length; k++) {
+				events[k] = new WorldEvents.TrackerSearch();
+				events[k].begin();
+			}
+			this.scheduler.plan(this.trackers, this.playerX + this.playerY * this.width, this.components);
+			for (int k = 0; k < events.length; k++)
+				report(k, events[k], this.scheduler.getExpanded(k), this.scheduler.getOpenListPeak(k), this.scheduler.isCarriedOver(k));
+		} else if (this.parallel && this.pathCache == null && this.trackers.size() > 1 && this.terrain.getSize() >= PARALLEL_MIN_TILES && this.terrain.isConcurrent()) {
+			// Runs on this thread and the common fork-join pool
+			new Search(0, this.trackers.size()).invoke();
+			parallel = true;
+		} else {
+			for (int k = 0; k < this.trackers.size(); k++)
+				search(k);
+		}
+		if (metrics != null)
+			metrics.recordSearch(System.nanoTime() - begin);
+		if (event.shouldCommit()) {
+			describe(event);
+			event.planner = this.planner.name();
+			event.parallel = parallel;
+			event.commit();
+		}
+	}
 
-		for (int k = 0; k < this.trackers.size(); k++) {
-			Tracker tracker = this.trackers.get(k);
-			while (tracker.getDestinationReached() == false && it < MAX_ITERATIONS) {
-				int currentTile = tracker.getCurrenTile().getX() + tracker.getCurrenTile().getY() * this.width;
-				tracker.setChecked(currentTile);
-				tracker.setOpen((currentTile - 1) % (this.width * this.height));
-				tracker.setOpen((currentTile + 1) % (this.width * this.height));
-				tracker.setOpen((currentTile - this.width) % (this.width * this.height));
-				tracker.setOpen((currentTile + this.width) % (this.width * this.height));
-
-				int bestTileIndex = 0;
-				double bestTilefCost = Double.POSITIVE_INFINITY;
-
-				for (int i = 0; i < tracker.getOpenList().size(); i++) {
-					if (tracker.getOpenList().get(i).getFcost() < bestTilefCost) {
-						bestTileIndex = i;
-						bestTilefCost = tracker.getOpenList().get(i).getFcost();
-					} else if(tracker.getOpenList().get(i).getFcost() == bestTilefCost && tracker.getOpenList().get(i).getGcost() < tracker.getOpenList().get(bestTileIndex).getGcost()) {
-						bestTileIndex = i;
-						bestTilefCost = tracker.getOpenList().get(i).getFcost();
-					}
-				}
-
-				tracker.setCurrentTile(tracker.getOpenList().get(bestTileIndex));
-
-				if (tracker.getCurrenTile().getX() == playerX && tracker.getCurrenTile().getY() == playerY)
-					tracker.setDestinationReached(true);
-
-				it++;	// Prevent infinite loops
+	/** Plan the path of the k-th tracker to the player */
+	private void search(int k) {
+		WorldEvents.TrackerSearch event = new WorldEvents.TrackerSearch();
+		event.begin();
+		Tracker tracker = this.trackers.get(k);
+		int start = tracker.getX() + tracker.getY() * this.width;
+		int destination = this.playerX + this.playerY * this.width;
+		int expanded;
+		int openListPeak;
+		if (!canReach(start, destination)) {
+			// The player is in another part of the map, no search would find a way
+			expanded = 0;
+			openListPeak = 0;
+		} else if (this.planner == Planner.INCREMENTAL) {
+			IncrementalPlanner planner = tracker.getIncrementalPlanner();
+			expanded = planner.plan(start, destination, MAX_ITERATIONS);
+			openListPeak = planner.getOpenListPeak();
+		} else if (this.planner == Planner.HIERARCHICAL) {
+			HierarchicalPlanner planner = tracker.getHierarchicalPlanner(this.clusterGraph);
+			expanded = planner.plan(start, destination, MAX_ITERATIONS);
+			openListPeak = planner.getOpenListPeak();
+		} else if (this.planner == Planner.JUMP_POINT) {
+			JumpPointPlanner planner = tracker.getJumpPointPlanner(this.bitGrid);
+			expanded = planner.plan(start, destination, MAX_ITERATIONS);
+			openListPeak = planner.getOpenListPeak();
+		} else if (this.pathCache != null && !tracker.search(this.playerX, this.playerY, this.pathCache, MAX_ITERATIONS)) {
+			// The tracker's own path or a cached one, no search
+			expanded = 0;
+			openListPeak = 0;
+		} else {
+			PathFinder pathFinder = tracker.getPathFinder();
+			if (this.pathCache == null) {
+				tracker.startSearch(this.playerX, this.playerY);
+				for (int it = 0; pathFinder.getFinished() == false && it < MAX_ITERATIONS; it++)
+					pathFinder.step();
+			}
+			expanded = pathFinder.getExpanded();
+			openListPeak = pathFinder.getOpenListPeak();
+		}
+
+		report(k, event, expanded, openListPeak, expanded >= MAX_ITERATIONS);
+	}
+
+	/** Hand the numbers of the k-th tracker's search to the metrics and the flight recorder */
+	private void report(int k, WorldEvents.TrackerSearch event, int expanded, int openListPeak, boolean capped) {
+		WorldMetrics metrics = this.metrics;
+		if (metrics != null)
+			metrics.recordTrackerSearch(k, expanded, openListPeak, capped);
+		if (event.shouldCommit()) {
+			describe(event);
+			event.tracker = k;
+			event.planner = this.planner.name();
+			event.expanded = expanded;
+			event.openListPeak = openListPeak;
+			event.capped = capped;
+			event.commit();
+		}
+	}
+
+	/** Plans the paths of the trackers [from, to), splitting the range into a task per tracker */
+	private class Search extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+
+		Search(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from == 1) {
+				search(this.from);
+				return;
 			}
+			int middle = (this.from + this.to) >>> 1;
+			invokeAll(new Search(this.from, middle), new Search(middle, this.to));
 		}
 	}
 
 	/**
 	 * Trackers will track the path calculated by the search method.
+	 * Called by {@link #movePlayer(int)}, public so the benchmarks can measure it on its own.
 	 */
-	private void trackPath() {
+	public synchronized void trackPath() {
+		WorldMetrics metrics = this.metrics;
+		long begin = metrics != null ? System.nanoTime() : 0;
+		WorldEvents.TrackPath event = new WorldEvents.TrackPath();
+		event.begin();
 		for (int k = 0; k < this.trackers.size(); k++) {
-			ArrayList<Integer> path = new ArrayList<Integer>();
-			path.add(this.playerX + this.playerY * this.width);
 			Tracker tracker = this.trackers.get(k);
-			Tile trackerTile = tracker.getMap().get(tracker.getX() + tracker.getY() * this.width);
-			Tile currentTile = tracker.getCurrenTile();
-
-			while (currentTile.getX() != trackerTile.getX() || currentTile.getY() != trackerTile.getY()) {
-				path.add(currentTile.getX() + currentTile.getY() * this.width);
-				currentTile = currentTile.getPredecessor();
+			if (tracker.getX() == this.playerX && tracker.getY() == this.playerY)
+				continue;
+			// A tracker which cannot reach the player has no plan to follow
+			if (!canReach(tracker.getX() + tracker.getY() * this.width, this.playerX + this.playerY * this.width))
+				continue;
+			switch (this.planner) {
+				case DISTANCE_FIELD:
+					int next = this.distanceField.nextStep(tracker.getX() + tracker.getY() * this.width);
+					tracker.setLocation(next % this.width, next / this.width);
+					break;
+				case INCREMENTAL:
+					next = tracker.getIncrementalPlanner().nextStep(tracker.getX() + tracker.getY() * this.width);
+					tracker.setLocation(next % this.width, next / this.width);
+					break;
+				case HIERARCHICAL:
+					next = tracker.getHierarchicalPlanner(this.clusterGraph).nextStep(tracker.getX() + tracker.getY() * this.width);
+					tracker.setLocation(next % this.width, next / this.width);
+					break;
+				case JUMP_POINT:
+					next = tracker.getJumpPointPlanner(this.bitGrid).nextStep(tracker.getX() + tracker.getY() * this.width);
+					tracker.setLocation(next % this.width, next / this.width);
+					break;
+				default:
+					if (this.scheduler != null)
+						tracker.followLastPath();
+					else
+						tracker.step();
+					break;
 			}
-			if (this.trackers.get(k).getX() != this.playerX || this.trackers.get(k).getY() != this.playerY)
-				tracker.setLocation(path.get(path.size()-1) % this.width, (int)(path.get(path.size()-1) / this.width));
-			path.clear();
+		}
+		if (metrics != null)
+			metrics.recordTrackPath(System.nanoTime() - begin);
+		if (event.shouldCommit()) {
+			describe(event);
+			event.commit();
 		}
 	}
 
@@ -275,14 +691,18 @@ public class World {
 	 * Increases or decreases difficulty.
 	 * @param amount
 	 */
-	public void changeDifficulty(int amount) {
+	public synchronized void changeDifficulty(int amount) {
+		if (this.recorder != null && amount != 1 && amount != -1)
+			throw new IllegalArgumentException("Only changes of the difficulty by one can be recorded");
 		this.difficulty += amount;
 		
 		// Value positive or negative?
 		switch (amount >> 31) {
 			case 0:
 				if (this.trackers.size() < 3)
-					this.addTracker((2 + difficulty + 1) % this.width, 23);
+					this.spawnTracker((2 + difficulty + 1) % this.width, 23);
+				else if (this.trackers.size() < this.maxTrackers)
+					this.addTracker();
 				this.speed = Math.min(this.speed+1, 3);
 				break;
 			case -1:
@@ -291,21 +711,27 @@ public class World {
 				this.speed = Math.max(this.speed-1, 1);
 				break;
 		}
+
+		updateViews();
+		record(amount > 0 ? InputLog.HARDER : InputLog.EASIER);
 	}
 
 	/**
 	 * Restart the game
 	 */
-	public void restart() {
+	public synchronized void restart() {
 		this.playerX = start % width;
 		this.playerY = (int) (start / width);
 		this.iteration = 0;
 		this.running = true;
+		this.won = false;
 		this.trackers.clear();
-		for (int i = 0; i < difficulty; i++) {
-			this.trackers.add(new Tracker(3+i, 23));
-			this.trackers.get(i).setMap(this.map, width);
-		}
+		this.spawnTile = -1;
+		for (int i = 0; i < difficulty; i++)
+			this.spawnTracker(3+i, 23);
+
+		updateViews();
+		record(InputLog.RESTART);
 	}
 
 	///////////////////////////////////////////////////////////////////////////
@@ -314,21 +740,70 @@ public class World {
 	/**
 	 * Adds the given view of the world and updates it once. Once registered through
 	 * this method, the view will receive updates whenever the world changes.
+	 * The updates are delivered on a thread of the view's own (see
+	 * {@link AsyncView}), so the game does not wait for the view. Views may be
+	 * registered from any thread, also while the game loop runs.
 	 * 
 	 * @param view the view to be registered.
+	 * @return the view delivering the updates (with its lag and dropped frames),
+	 * null if the world is headless.
 	 */
-	public void registerView(View view) {
-		views.add(view);
-		view.update(this);
+	public synchronized AsyncView registerView(View view) {
+		if (this.headless)
+			return null;
+		AsyncView async = view instanceof AsyncView ? (AsyncView) view : new AsyncView(view);
+		async.setMetrics(this.metrics);
+		views.add(async);
+		async.update(this);
+		return async;
 	}
 
 	/**
-	 * Updates all views by calling their {@link View#update(World)} methods.
+	 * Publishes a snapshot of the step and updates all views by calling their
+	 * {@link View#update(World)} methods (which only hands the update to their
+	 * delivery threads).
 	 */
 	private void updateViews() {
-		for (int i = 0; i < views.size(); i++) {
-			views.get(i).update(this);
+		WorldEvents.UpdateViews event = new WorldEvents.UpdateViews();
+		event.begin();
+		publish();
+		if (!this.headless) {
+			for (int i = 0; i < views.size(); i++) {
+				views.get(i).update(this);
+			}
+		}
+		if (event.shouldCommit()) {
+			describe(event);
+			event.views = this.headless ? 0 : views.size();
+			event.commit();
+		}
+	}
+
+	/** Is there a path between the tiles? (assumed if the parts of the map are not known) */
+	private boolean canReach(int from, int to) {
+		return this.components == null || this.components.isConnected(from, to);
+	}
+
+	/** Log a command the world has just played */
+	private void record(int command) {
+		if (this.recorder != null)
+			this.recorder.record(command, this.snapshot);
+	}
+
+	/** Fill in the map size, trackers and difficulty of a flight recorder event */
+	private void describe(WorldEvents.WorldEvent event) {
+		event.describe(this.width, this.height, this.trackers.size(), this.difficulty);
+	}
+
+	/** Copy the state into a new snapshot and make it visible to all threads */
+	private void publish() {
+		int[] trackerX = new int[this.trackers.size()];
+		int[] trackerY = new int[this.trackers.size()];
+		for (int i = 0; i < trackerX.length; i++) {
+			trackerX[i] = this.trackers.get(i).getX();
+			trackerY[i] = this.trackers.get(i).getY();
 		}
+		this.snapshot = new Snapshot(this.iteration, this.playerX, this.playerY, trackerX, trackerY, this.destination, this.difficulty, this.running, this.won, this.terrain);
 	}
 
 }
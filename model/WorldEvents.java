@@ -0,0 +1,120 @@
+package model;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events of the game, shown under "Labyrinth" in JDK
+ * Mission Control next to the GC, thread and allocation events of the same
+ * recording (start one with -XX:StartFlightRecording:filename=game.jfr or
+ * jcmd). Every event carries the map size, the number of trackers and the
+ * difficulty.
+ *
+ * The events are created and committed whether a recording runs or not:
+ * while JFR is off their methods are empty and the JIT removes the objects,
+ * so there is nothing to switch off.
+ */
+public final class WorldEvents {
+
+    private WorldEvents() {
+    }
+
+    /** What every event of the game tells about the world */
+    @Category("Labyrinth")
+    @StackTrace(false)
+    public abstract static class WorldEvent extends Event {
+
+        @Label("Map Width")
+        int width;
+        @Label("Map Height")
+        int height;
+        @Label("Trackers")
+        int trackers;
+        @Label("Difficulty")
+        int difficulty;
+
+        void describe(int width, int height, int trackers, int difficulty) {
+            this.width = width;
+            this.height = height;
+            this.trackers = trackers;
+            this.difficulty = difficulty;
+        }
+
+        /** Take the map size, trackers and difficulty from a snapshot */
+        public void describe(Snapshot snapshot) {
+            describe(snapshot.getWidth(), snapshot.getHeight(), snapshot.getTrackerCount(), snapshot.getDifficulty());
+        }
+    }
+
+    @Name("labyrinth.Turn")
+    @Label("Turn")
+    @Description("The trackers' part of a turn: searches, steps and handing the state to the views")
+    public static final class Turn extends WorldEvent {
+
+        @Label("Iteration")
+        int iteration;
+        @Label("Game Running")
+        boolean running;
+    }
+
+    @Name("labyrinth.Search")
+    @Label("Search")
+    @Description("All trackers plan their paths to the player")
+    public static final class Search extends WorldEvent {
+
+        @Label("Planner")
+        String planner;
+        @Label("Parallel")
+        boolean parallel;
+    }
+
+    @Name("labyrinth.TrackerSearch")
+    @Label("Tracker Search")
+    @Description("One tracker plans its path to the player (with a search scheduler: its share of the turn's searches)")
+    public static final class TrackerSearch extends WorldEvent {
+
+        @Label("Tracker")
+        int tracker;
+        @Label("Planner")
+        String planner;
+        @Label("Nodes Expanded")
+        int expanded;
+        @Label("Open List Peak")
+        int openListPeak;
+        @Label("Iteration Cap Hit")
+        @Description("The search stopped after MAX_ITERATIONS expansions, or a scheduled search ran out of time and goes on next turn")
+        boolean capped;
+    }
+
+    @Name("labyrinth.TrackPath")
+    @Label("Track Path")
+    @Description("The trackers take a step along their paths")
+    public static final class TrackPath extends WorldEvent {
+    }
+
+    @Name("labyrinth.UpdateViews")
+    @Label("Update Views")
+    @Description("A snapshot is published and handed to the views")
+    public static final class UpdateViews extends WorldEvent {
+
+        @Label("Views")
+        int views;
+    }
+
+    @Name("labyrinth.Frame")
+    @Label("Frame")
+    @Description("A view draws the state of the world")
+    public static final class Frame extends WorldEvent {
+
+        @Label("View")
+        String view;
+
+        public Frame(String view) {
+            this.view = view;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package model;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Measures how long the turns of a world take and how much work the
+ * trackers' searches do, see {@link WorldMetricsMXBean}. A world only measures
+ * while it has metrics ({@link World#setMetrics(WorldMetrics)}); without them
+ * the cost is one null check per turn and tracker. One instance may be shared
+ * by several worlds, also on different threads (e.g. the games of the
+ * BatchRunner).
+ */
+public class WorldMetrics implements WorldMetricsMXBean {
+
+    private static final double MICROSECONDS = 1e-3;
+
+    private final Histogram turnTime = new Histogram();
+    private final Histogram searchTime = new Histogram();
+    private final Histogram trackPathTime = new Histogram();
+    private final Histogram expandedNodes = new Histogram();
+    private final Histogram openListPeak = new Histogram();
+    private final Map<String, Histogram> viewUpdateTime = new ConcurrentHashMap<>();
+    /** Guarded by this */
+    private long budgetExhausted;
+    private long[] expandedPerTracker = new long[8];
+
+    @Override
+    public Histogram.Summary getTurnTime() { return this.turnTime.summarize(MICROSECONDS); }
+    @Override
+    public Histogram.Summary getSearchTime() { return this.searchTime.summarize(MICROSECONDS); }
+    @Override
+    public Histogram.Summary getTrackPathTime() { return this.trackPathTime.summarize(MICROSECONDS); }
+    @Override
+    public Histogram.Summary getExpandedNodes() { return this.expandedNodes.summarize(1); }
+    @Override
+    public Histogram.Summary getOpenListPeak() { return this.openListPeak.summarize(1); }
+
+    @Override
+    public synchronized long getBudgetExhausted() {
+        return this.budgetExhausted;
+    }
+
+    @Override
+    public synchronized long[] getExpandedPerTracker() {
+        int trackers = this.expandedPerTracker.length;
+        while (trackers > 0 && this.expandedPerTracker[trackers - 1] == 0)
+            trackers--;
+        return Arrays.copyOf(this.expandedPerTracker, trackers);
+    }
+
+    @Override
+    public Map<String, Histogram.Summary> getViewUpdateTime() {
+        Map<String, Histogram.Summary> summaries = new TreeMap<>();
+        for (Map.Entry<String, Histogram> entry : this.viewUpdateTime.entrySet())
+            summaries.put(entry.getKey(), entry.getValue().summarize(MICROSECONDS));
+        return summaries;
+    }
+
+    @Override
+    public synchronized void reset() {
+        this.turnTime.reset();
+        this.searchTime.reset();
+        this.trackPathTime.reset();
+        this.expandedNodes.reset();
+        this.openListPeak.reset();
+        this.viewUpdateTime.clear();
+        this.budgetExhausted = 0;
+        Arrays.fill(this.expandedPerTracker, 0);
+    }
+
+    /**
+     * Makes the metrics visible through the platform MBean server under the
+     * name "labyrinth:type=World,name=" + name.
+     *
+     * @throws JMException if the name is taken.
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("labyrinth:type=World,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    void recordTurn(long nanos) {
+        this.turnTime.record(nanos);
+    }
+
+    void recordSearch(long nanos) {
+        this.searchTime.record(nanos);
+    }
+
+    void recordTrackPath(long nanos) {
+        this.trackPathTime.record(nanos);
+    }
+
+    /**
+     * One tracker's search.
+     *
+     * @param tracker number of the tracker in its world.
+     * @param exhausted whether the search stopped because its budget was used up.
+     */
+    void recordTrackerSearch(int tracker, int expanded, int openListPeak, boolean exhausted) {
+        this.expandedNodes.record(expanded);
+        this.openListPeak.record(openListPeak);
+        synchronized (this) {
+            if (tracker >= this.expandedPerTracker.length)
+                this.expandedPerTracker = Arrays.copyOf(this.expandedPerTracker, Math.max(tracker + 1, 2 * this.expandedPerTracker.length));
+            this.expandedPerTracker[tracker] += expanded;
+            if (exhausted)
+                this.budgetExhausted++;
+        }
+    }
+
+    /** A view took the given time to handle an update */
+    public void recordViewUpdate(String view, long nanos) {
+        this.viewUpdateTime.computeIfAbsent(view, name -> new Histogram()).record(nanos);
+    }
+
+    @Override
+    public String toString() {
+        return "turn us: " + getTurnTime() + "\nsearch us: " + getSearchTime() + "\ntrackPath us: " + getTrackPathTime()
+                + "\nexpanded per search: " + getExpandedNodes() + "\nopen list peak: " + getOpenListPeak()
+                + "\nbudget exhausted: " + getBudgetExhausted() + "\nexpanded per tracker: " + Arrays.toString(getExpandedPerTracker())
+                + "\nview update us: " + getViewUpdateTime();
+    }
+}
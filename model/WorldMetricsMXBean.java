@@ -0,0 +1,30 @@
+package model;
+
+import java.util.Map;
+
+/**
+ * What {@link WorldMetrics} shows through JMX (e.g. in JConsole). Times are in
+ * microseconds.
+ */
+public interface WorldMetricsMXBean {
+
+    /** Duration of a turn: the trackers' search and moves and handing the state to the views */
+    Histogram.Summary getTurnTime();
+    /** Duration of {@link World#search()} (all trackers) */
+    Histogram.Summary getSearchTime();
+    /** Duration of {@link World#trackPath()} (all trackers) */
+    Histogram.Summary getTrackPathTime();
+    /** Nodes expanded by one tracker's search (with a {@link SearchScheduler}: in one turn) */
+    Histogram.Summary getExpandedNodes();
+    /** Largest size the open list of one tracker's search reached */
+    Histogram.Summary getOpenListPeak();
+    /** Searches which stopped because they used up their budget of expansions (or time, and go on next turn) */
+    long getBudgetExhausted();
+    /** Nodes expanded so far by each tracker (by its number in the world) */
+    long[] getExpandedPerTracker();
+    /** Time a view took to handle an update, by view */
+    Map<String, Histogram.Summary> getViewUpdateTime();
+
+    /** Forget everything recorded so far */
+    void reset();
+}
@@ -0,0 +1,133 @@
+package view;
+
+import model.World;
+import model.WorldMetrics;
+
+/**
+ * Delivers the updates of the world to a view on a thread of its own, so a
+ * slow view (e.g. a console over a slow connection) does not hold up the
+ * game. The view always gets the latest state: updates which arrive while it
+ * is still busy are merged into one, and the frames skipped that way are
+ * counted as dropped.
+ *
+ * Views read the world through {@link World#getSnapshot()}, which is safe on
+ * the delivery thread while the world plays the next turn. With
+ * {@link WorldMetrics} the time the view takes per update is recorded.
+ */
+public class AsyncView implements View {
+
+	private final View view;
+	private final Thread thread;
+	/** World of the latest update */
+	private World world;
+	/** Number of updates so far */
+	private long published;
+	/** When the latest update arrived (System.nanoTime) */
+	private long publishedAt;
+	/** Number of the update the view got last */
+	private long delivered;
+	private long deliveredFrames;
+	private long droppedFrames;
+	/** Time from an update to the end of its delivery, in nanoseconds */
+	private long lastLag;
+	private long maxLag;
+	private boolean closed;
+	/** Where the update times go, null if they are not measured */
+	private volatile WorldMetrics metrics;
+
+	public AsyncView(View view) {
+		this.view = view;
+		this.thread = new Thread(this::deliver, "View " + view.getClass().getSimpleName());
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/** The view the updates are delivered to */
+	public View getView() {
+		return this.view;
+	}
+
+	/** Hands the update to the delivery thread and returns at once */
+	@Override
+	public synchronized void update(World world) {
+		this.world = world;
+		this.published++;
+		this.publishedAt = System.nanoTime();
+		notifyAll();
+	}
+
+	/** Record the time the view takes per update (null to stop) */
+	public void setMetrics(WorldMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/** Updates the view got */
+	public synchronized long getDeliveredFrames() {
+		return this.deliveredFrames;
+	}
+
+	/** Updates the view skipped because it was busy with an earlier one */
+	public synchronized long getDroppedFrames() {
+		return this.droppedFrames;
+	}
+
+	/** Time (in nanoseconds) the last delivered update took to reach the view and be handled */
+	public synchronized long getLastLag() {
+		return this.lastLag;
+	}
+
+	public synchronized long getMaxLag() {
+		return this.maxLag;
+	}
+
+	/** Stops delivering updates (an update being delivered is finished) */
+	public synchronized void close() {
+		this.closed = true;
+		notifyAll();
+	}
+
+	/** Waits until the view has got every update so far (or the view was closed) */
+	public synchronized void await() throws InterruptedException {
+		while (this.delivered != this.published && !this.closed)
+			wait();
+	}
+
+	private void deliver() {
+		try {
+			while (true) {
+				World world;
+				long frame;
+				long at;
+				synchronized (this) {
+					while (this.delivered == this.published && !this.closed)
+						wait();
+					if (this.closed)
+						return;
+					world = this.world;
+					frame = this.published;
+					at = this.publishedAt;
+				}
+
+				long begin = System.nanoTime();
+				this.view.update(world);
+				long end = System.nanoTime();
+				WorldMetrics metrics = this.metrics;
+				if (metrics != null)
+					metrics.recordViewUpdate(this.view.getClass().getSimpleName(), end - begin);
+
+				long lag = end - at;
+				synchronized (this) {
+					this.droppedFrames += frame - this.delivered - 1;
+					this.delivered = frame;
+					this.deliveredFrames++;
+					this.lastLag = lag;
+					this.maxLag = Math.max(this.maxLag, lag);
+					notifyAll();
+				}
+			}
+		} catch (InterruptedException e) {
+			// Stop delivering
+		}
+	}
+
+}
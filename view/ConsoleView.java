@@ -1,57 +1,233 @@
 package view;
 
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import model.Snapshot;
+import model.Terrain;
 import model.World;
+import model.WorldEvents;
 
 /**
  * A view that prints the current state of the world to the console upon every
- * update.
+ * update. The first frame is printed completely; afterwards only the cells
+ * which changed are redrawn, using ANSI escape codes to move the cursor, so
+ * an update costs a few bytes no matter how large the map is. Every frame is
+ * built in one reusable buffer and written with a single call.
  */
 public class ConsoleView implements View {
 
+	private static final byte WALL = 0;
+	private static final byte FLOOR = 1;
+	private static final byte UNKNOWN = 2;
+	private static final byte PLAYER = 3;
+	private static final byte DESTINATION = 4;
+	private static final byte TRACKER = 5;
+	/** UTF-8 encoding of each glyph */
+	private static final byte[][] GLYPHS = {
+		"█".getBytes(StandardCharsets.UTF_8),
+		".".getBytes(StandardCharsets.UTF_8),
+		"?".getBytes(StandardCharsets.UTF_8),
+		"#".getBytes(StandardCharsets.UTF_8),
+		"x".getBytes(StandardCharsets.UTF_8),
+		"°".getBytes(StandardCharsets.UTF_8),
+	};
+	private static final byte[] CLEAR = "\033[H\033[2J".getBytes(StandardCharsets.US_ASCII);
+
+	private final WritableByteChannel out;
+	private ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+	/** Glyph of every cell as it is on the screen (null before the first frame) */
+	private byte[] screen;
+	private int width;
+	private int height;
+	/** Terrain modifications the screen shows */
+	private int modifications;
+	/** Cells of the player and the trackers on the screen */
+	private int[] entities = new int[16];
+	private int entityCount;
+	/** Cells of the player and the trackers in the previous frame */
+	private int[] oldEntities = new int[16];
+	/** Cells with a tracker on them (one bit per cell) */
+	private long[] trackers;
+	/** Cell the cursor is on, -1 if unknown */
+	private int cursor;
+	private long bytesWritten;
+
+	/** Prints to the standard output */
+	public ConsoleView() {
+		this(Channels.newChannel(new FileOutputStream(FileDescriptor.out)));
+	}
+
+	public ConsoleView(WritableByteChannel out) {
+		this.out = out;
+	}
+
+	/** Number of bytes printed so far */
+	public long getBytesWritten() {
+		return this.bytesWritten;
+	}
+
 	@Override
 	public void update(World world) {
-		// The player's position
-		int playerX = world.getPlayerX();
-		int playerY = world.getPlayerY();
-		int width = world.getWidth();
-
-		// Clear screen then print labyrinth
-		System.out.print("\033[H\033[2J");  
-    	System.out.flush();
-		for (int row = 0; row < world.getHeight(); row++) {
-			for (int col = 0; col < world.getWidth(); col++) {
-				// If the player is here, print #
-				int tile = col + row * world.getWidth();
-				if (row == playerY && col == playerX) {
-					System.out.print("#");
-				}
-				else if (tile == world.getDestination()) {
-					System.out.print("x");
-				}
-				else if (tile == world.getTracker(0).getX() + world.getTracker(0).getY() * width) {
-					System.out.print("°");
-				}
-				else {
-					switch(world.getMap().get(tile).getType()) {
-						case 0:
-							System.out.print("█");
-							break;
-						case 1:
-							System.out.print(".");
-							break;
-						default:
-							System.out.print("?");
-							break;
-					}
-				}
+		WorldEvents.Frame event = new WorldEvents.Frame("ConsoleView");
+		event.begin();
+		Snapshot snapshot = world.getSnapshot();
+		Terrain terrain = snapshot.getTerrain();
+		this.buffer.clear();
+		// Somebody else may have printed in the meantime
+		this.cursor = -1;
+		if (this.screen == null || this.width != snapshot.getWidth() || this.height != snapshot.getHeight()) {
+			printAll(snapshot, terrain);
+		} else {
+			// Trackers have moved: forget where they were, then mark where they are
+			for (int i = 1; i < this.entityCount; i++)
+				this.trackers[this.entities[i] >>> 6] &= ~(1L << this.entities[i]);
+			int previous = this.entityCount;
+			markEntities(snapshot);
+
+			if (this.modifications != snapshot.getModifications()) {
+				for (int cell = 0; cell < this.screen.length; cell++)
+					print(cell, glyph(snapshot, terrain, cell));
+			} else {
+				// Only the cells entities left or entered can have changed
+				for (int i = 0; i < previous; i++)
+					print(this.oldEntities[i], glyph(snapshot, terrain, this.oldEntities[i]));
+				for (int i = 0; i < this.entityCount; i++)
+					print(this.entities[i], glyph(snapshot, terrain, this.entities[i]));
 			}
+		}
+		this.modifications = snapshot.getModifications();
+
+		// Leave the cursor below the map, where other messages are printed
+		moveTo(this.height * this.width);
+		flush();
+		if (event.shouldCommit()) {
+			event.describe(snapshot);
+			event.commit();
+		}
+	}
 
+	/** Clear the screen and print every cell */
+	private void printAll(Snapshot snapshot, Terrain terrain) {
+		this.width = snapshot.getWidth();
+		this.height = snapshot.getHeight();
+		this.screen = new byte[this.width * this.height];
+		this.trackers = new long[(this.screen.length + 63) >>> 6];
+		this.entityCount = 0;
+		markEntities(snapshot);
+
+		put(CLEAR);
+		for (int row = 0; row < this.height; row++) {
+			for (int col = 0; col < this.width; col++) {
+				int cell = col + row * this.width;
+				this.screen[cell] = glyph(snapshot, terrain, cell);
+				put(GLYPHS[this.screen[cell]]);
+			}
 			// A newline after every row
-			System.out.println();
+			put((byte) '\n');
+		}
+		this.cursor = this.screen.length;
+	}
+
+	/** Remember where the player and the trackers are now (the old positions move to oldEntities) */
+	private void markEntities(Snapshot snapshot) {
+		int[] swap = this.oldEntities;
+		this.oldEntities = this.entities;
+		this.entities = swap;
+		int count = 1 + snapshot.getTrackerCount();
+		if (this.entities.length < count)
+			this.entities = new int[Math.max(count, 2 * this.entities.length)];
+		this.entities[0] = snapshot.getPlayerX() + snapshot.getPlayerY() * this.width;
+		for (int i = 0; i < snapshot.getTrackerCount(); i++) {
+			int cell = snapshot.getTrackerX(i) + snapshot.getTrackerY(i) * this.width;
+			this.entities[i + 1] = cell;
+			this.trackers[cell >>> 6] |= 1L << cell;
 		}
+		this.entityCount = count;
+	}
+
+	/** What a cell shows: the player, the destination, a tracker or the terrain (in this order) */
+	private byte glyph(Snapshot snapshot, Terrain terrain, int cell) {
+		if (cell == this.entities[0])
+			return PLAYER;
+		if (cell == snapshot.getDestination())
+			return DESTINATION;
+		if ((this.trackers[cell >>> 6] & (1L << cell)) != 0)
+			return TRACKER;
+		switch (terrain.getType(cell)) {
+			case 0:
+				return WALL;
+			case 1:
+				return FLOOR;
+			default:
+				return UNKNOWN;
+		}
+	}
+
+	/** Print a glyph unless the screen already shows it */
+	private void print(int cell, byte glyph) {
+		if (this.screen[cell] == glyph)
+			return;
+		this.screen[cell] = glyph;
+		moveTo(cell);
+		put(GLYPHS[glyph]);
+		this.cursor = (cell + 1) % this.width == 0 ? -1 : cell + 1;
+	}
+
+	/** Move the cursor to a cell (the cell after the last one is the start of the line below the map) */
+	private void moveTo(int cell) {
+		if (cell == this.cursor)
+			return;
+		put((byte) '\033');
+		put((byte) '[');
+		putNumber(cell / this.width + 1);
+		put((byte) ';');
+		putNumber(cell % this.width + 1);
+		put((byte) 'H');
+		this.cursor = cell;
+	}
 
-		// A newline between every update
-		System.out.println();
+	private void putNumber(int value) {
+		if (value >= 10)
+			putNumber(value / 10);
+		put((byte) ('0' + value % 10));
+	}
+
+	private void put(byte b) {
+		if (!this.buffer.hasRemaining())
+			grow(1);
+		this.buffer.put(b);
+	}
+
+	private void put(byte[] bytes) {
+		if (this.buffer.remaining() < bytes.length)
+			grow(bytes.length);
+		this.buffer.put(bytes);
+	}
+
+	private void grow(int needed) {
+		ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * this.buffer.capacity(), this.buffer.position() + needed));
+		this.buffer.flip();
+		larger.put(this.buffer);
+		this.buffer = larger;
+	}
+
+	/** Write the frame with a single call */
+	private void flush() {
+		this.buffer.flip();
+		this.bytesWritten += this.buffer.remaining();
+		try {
+			while (this.buffer.hasRemaining())
+				this.out.write(this.buffer);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
 	}
 
 }
@@ -4,9 +4,14 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
 import java.awt.Rectangle;
+import java.awt.Transparency;
 import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import javax.imageio.ImageIO;
 import javax.swing.JPanel;
@@ -18,26 +23,47 @@ import model.*;
  */
 public class GraphicView extends JPanel implements View {
 	
+	/** Largest map (in pixels) which is kept in a frame image */
+	private static final long MAX_FRAME_PIXELS = 4096 * 4096;
+
 	/** The view's width. */
 	private final int WIDTH;
 	/** The view's height. */
 	private final int HEIGHT;
-	/** Map */
-	private final ArrayList<Tile> map;
+	/** Map (shared with the world) */
+	private final Terrain map;
 	/** Textures */
 	private BufferedImage image;
+	/** Textures sliced and scaled to the field size (created on the first paint) */
+	private TextureAtlas atlas;
+	/** The map (terrain and sprites) drawn at the field size, in video memory if possible */
+	private Image frame;
+	/** Terrain modifications the frame shows (-1: not drawn yet) */
+	private int frameModifications = -1;
+	/** Terrain modifications at the last update */
+	private int modifications;
+	/** Cells (x + y * width) changed since the last paint */
+	private int[] dirtyCells = new int[16];
+	private int dirtyCount;
+	/** More changed cells than that are not recorded, the next paint draws the whole frame */
+	private final int MAX_DIRTY_CELLS;
+	/** Union of the cells changed since the last paint */
+	private final Rectangle dirty = new Rectangle();
 	/** Destination */
 	private Rectangle destination;
 	/** Trackers */
 	private ArrayList<Rectangle> trackers;
+	/** State of the last update (null before the first one) */
+	private Snapshot snapshot;
 	
 	private Dimension fieldDimension;
 	
-	public GraphicView(int width, int height, Dimension fieldDimension, ArrayList<Tile> map, int destination, int difficulty) {
+	public GraphicView(int width, int height, Dimension fieldDimension, Terrain map, int destination, int difficulty) {
 		this.WIDTH = width;
 		this.HEIGHT = height;
 		this.fieldDimension = fieldDimension;
 		this.bg = new Rectangle(WIDTH * fieldDimension.width, HEIGHT * fieldDimension.height);
+		this.MAX_DIRTY_CELLS = Math.max(16, width * height);
 		this.destination = new Rectangle((destination % width) * this.fieldDimension.width, ((int) destination / width) * this.fieldDimension.height, this.fieldDimension.width / 3, this.fieldDimension.height / 3);
 		this.trackers = new ArrayList<Rectangle>();
 		for (int i = 0; i < difficulty && i < 3; i++)
@@ -67,61 +93,238 @@ public class GraphicView extends JPanel implements View {
 	private Font arial_18 = new Font("Arial", Font.PLAIN, 18);
 	
 	/**
-	 * Creates a new instance.
+	 * Paints the part of the view inside the clip. Small maps are copied from
+	 * the frame image, which only has the changed cells redrawn.
 	 */
 	@Override
-	public void paint(Graphics g) {
-		// Paint background just for good measure
-		g.setColor(Color.BLACK);
-		g.fillRect(bg.x, bg.y, bg.width, bg.height);
-
-		// Paint tile map (getSubimage() appears to be slow?)
-		for (int y = 0; y < this.HEIGHT; y++) {
-			for (int x = 0; x < this.WIDTH; x++) {
-				g.drawImage(image.getSubimage((this.map.get((y * this.WIDTH) + x).getType() * 320) % 1600,
-				((int)(this.map.get((y * this.WIDTH) + x).getType() / 5 )) * 320, 320, 320), 
-				x*this.fieldDimension.width, y*this.fieldDimension.height, 
-				fieldDimension.width, 
-				fieldDimension.height, 
-				null);
-			}
+	public synchronized void paint(Graphics g) {
+		WorldEvents.Frame event = new WorldEvents.Frame("GraphicView");
+		event.begin();
+		Rectangle clip = g.getClipBounds();
+		if (!paintFrame(g, clip)) {
+			// Map too large for a frame image: draw the tiles and sprites inside the clip
+			paintTiles(g, clip);
+			paintSprites(g, clip);
+		}
+
+		// Draw GUI (below the map)
+		if (clip == null || clip.y + clip.height > bg.height) {
+			g.setColor(Color.BLACK);
+			g.setFont(arial_24);
+			g.drawString("Dimensions: " + this.WIDTH + "x" + this.HEIGHT, 10, this.HEIGHT * this.fieldDimension.height + 35);
+			g.setFont(arial_18);
+			g.drawString("Press \"R\" to restart.", 300, this.HEIGHT * this.fieldDimension.height + 20);
+			g.drawString("Press \"E\" or \"Q\" to increase/decrease the difficulty.", 300, this.HEIGHT * this.fieldDimension.height + 40);
+		}
+		this.dirty.setBounds(0, 0, 0, 0);
+		this.dirtyCount = 0;
+		if (this.snapshot != null && event.shouldCommit()) {
+			event.describe(this.snapshot);
+			event.commit();
 		}
+	}
+
+	/**
+	 * Region which has to be repainted because of the updates since the last
+	 * paint (empty if nothing changed).
+	 */
+	public synchronized Rectangle getDirtyRegion() {
+		return new Rectangle(this.dirty);
+	}
+
+	/** Does a rectangle intersect the clip (no clip: everything is visible)? */
+	private static boolean isVisible(Rectangle clip, Rectangle r) {
+		return clip == null || clip.intersects(r);
+	}
+
+	/** Draws the destination, the player and the trackers inside the clip */
+	private void paintSprites(Graphics g, Rectangle clip) {
 		// Draw destination
-		g.setColor(Color.GREEN);
-		g.fillRect(destination.x + destination.width, destination.y + destination.height, destination.width, destination.height);
+		if (isVisible(clip, destination)) {
+			g.setColor(Color.GREEN);
+			g.fillRect(destination.x + destination.width, destination.y + destination.height, destination.width, destination.height);
+		}
 		// Paint player
-		g.setColor(Color.BLUE);
-		g.fillOval(player.x + player.width / 4, player.y + player.height / 4, player.width / 2, player.height / 2);
+		if (isVisible(clip, player)) {
+			g.setColor(Color.BLUE);
+			g.fillOval(player.x + player.width / 4, player.y + player.height / 4, player.width / 2, player.height / 2);
+		}
 		// Draw trackers
 		g.setColor(Color.RED);
 		Rectangle tracker;
 		for (int i = 0; i < this.trackers.size(); i++) {
 			tracker = this.trackers.get(i);
-			g.fillOval(tracker.x + tracker.width / 4, tracker.y + tracker.height / 4, tracker.width / 2, tracker.height / 2);
+			if (isVisible(clip, tracker))
+				g.fillOval(tracker.x + tracker.width / 4, tracker.y + tracker.height / 4, tracker.width / 2, tracker.height / 2);
+		}
+	}
+
+	/**
+	 * Copies the part of the map inside the clip from the frame image. The
+	 * frame holds the terrain and the sprites; it is drawn completely once
+	 * (and again after a tile changed), afterwards only the changed cells are
+	 * redrawn.
+	 *
+	 * @return false if the map is too large to be kept in one image.
+	 */
+	private boolean paintFrame(Graphics g, Rectangle clip) {
+		GraphicsConfiguration configuration = getGraphicsConfiguration();
+		if (this.atlas == null)
+			this.atlas = new TextureAtlas(this.image, this.fieldDimension, configuration);
+		if ((long) bg.width * bg.height > MAX_FRAME_PIXELS)
+			return false;
+
+		Rectangle area = clip == null ? bg : bg.intersection(clip);
+		if (configuration == null) {
+			// Not on a screen (e.g. painted into an image): a plain image will do
+			if (!(this.frame instanceof BufferedImage)) {
+				this.frame = TextureAtlas.createImage(null, bg.width, bg.height, Transparency.OPAQUE);
+				this.frameModifications = -1;
+			}
+			updateFrame(false);
+			drawFrame(g, area);
+			return true;
 		}
 
-		// Draw GUI
-		g.setColor(Color.BLACK);
-		g.setFont(arial_24);
-		g.drawString("Dimensions: " + this.WIDTH + "x" + this.HEIGHT, 10, this.HEIGHT * this.fieldDimension.height + 35);
-		g.setFont(arial_18);
-		g.drawString("Press \"R\" to restart.", 300, this.HEIGHT * this.fieldDimension.height + 20);
-		g.drawString("Press \"E\" or \"Q\" to increase/decrease the difficulty.", 300, this.HEIGHT * this.fieldDimension.height + 40);
+		// Volatile images may lose their contents at any time and have to be redrawn then
+		VolatileImage frame;
+		do {
+			int state = this.frame instanceof VolatileImage
+					? ((VolatileImage) this.frame).validate(configuration)
+					: VolatileImage.IMAGE_INCOMPATIBLE;
+			if (state == VolatileImage.IMAGE_INCOMPATIBLE)
+				this.frame = configuration.createCompatibleVolatileImage(bg.width, bg.height);
+			frame = (VolatileImage) this.frame;
+			updateFrame(state != VolatileImage.IMAGE_OK);
+			drawFrame(g, area);
+		} while (frame.contentsLost());
+		return true;
+	}
+
+	/** Bring the frame image up to date, completely or only the changed cells */
+	private void updateFrame(boolean everything) {
+		Graphics g = this.frame.getGraphics();
+		if (everything || this.frameModifications != this.map.getModifications()) {
+			paintTiles(g, null);
+			paintSprites(g, null);
+			this.frameModifications = this.map.getModifications();
+		} else if (this.dirtyCount > 0) {
+			// Restore the terrain of the changed cells, then draw the sprites again
+			for (int i = 0; i < this.dirtyCount; i++) {
+				int x = this.dirtyCells[i] % this.WIDTH;
+				int y = this.dirtyCells[i] / this.WIDTH;
+				paintTile(g, x, y);
+			}
+			paintSprites(g, null);
+		}
+		g.dispose();
 	}
 
+	/** Copies a part of the frame image */
+	private void drawFrame(Graphics g, Rectangle area) {
+		if (area.isEmpty())
+			return;
+		int x2 = area.x + area.width;
+		int y2 = area.y + area.height;
+		g.drawImage(this.frame, area.x, area.y, x2, y2, area.x - bg.x, area.y - bg.y, x2 - bg.x, y2 - bg.y, null);
+	}
+
+	/** Draws the tiles of the map inside the clip */
+	private void paintTiles(Graphics g, Rectangle clip) {
+		Rectangle area = clip == null ? bg : bg.intersection(clip);
+		if (area.isEmpty())
+			return;
+		int fromX = area.x / this.fieldDimension.width;
+		int fromY = area.y / this.fieldDimension.height;
+		int toX = Math.min(this.WIDTH, (area.x + area.width + this.fieldDimension.width - 1) / this.fieldDimension.width);
+		int toY = Math.min(this.HEIGHT, (area.y + area.height + this.fieldDimension.height - 1) / this.fieldDimension.height);
+		for (int y = fromY; y < toY; y++)
+			for (int x = fromX; x < toX; x++)
+				paintTile(g, x, y);
+	}
+
+	/** Draws one tile (black if the tileset has no texture for it) */
+	private void paintTile(Graphics g, int x, int y) {
+		BufferedImage texture = this.atlas.getTexture(this.map.getType(x, y));
+		if (texture != null) {
+			g.drawImage(texture, x * this.fieldDimension.width, y * this.fieldDimension.height, null);
+		} else {
+			g.setColor(Color.BLACK);
+			g.fillRect(x * this.fieldDimension.width, y * this.fieldDimension.height, this.fieldDimension.width, this.fieldDimension.height);
+		}
+	}
+
+	/**
+	 * Moves the sprites to their new cells and repaints only the cells which
+	 * changed (where the player and the trackers were and where they are now).
+	 * Swing merges the repaints of one turn into a single paint. Updates come
+	 * from the view's delivery thread while Swing paints, so both hold the
+	 * view's lock.
+	 */
 	@Override
-	public void update(World world) {
-		
+	public synchronized void update(World world) {
+		Snapshot snapshot = world.getSnapshot();
+		this.snapshot = snapshot;
 		// Update players size and location
+		changed(player);
 		player.setSize(fieldDimension);
 		player.setLocation((int)
-				(world.getPlayerX() * fieldDimension.width),
-				(int) (world.getPlayerY() * fieldDimension.height));
-		// Update trackers
+				(snapshot.getPlayerX() * fieldDimension.width),
+				(int) (snapshot.getPlayerY() * fieldDimension.height));
+		changed(player);
+		// Update trackers (the number of trackers changes with the difficulty)
+		while (this.trackers.size() < snapshot.getTrackerCount())
+			this.addTracker();
+		while (this.trackers.size() > snapshot.getTrackerCount())
+			changed(this.trackers.remove(this.trackers.size() - 1));
 		for (int i = 0; i < this.trackers.size(); i++) {
-			this.trackers.get(i).setSize(fieldDimension.width, fieldDimension.height);
-			this.trackers.get(i).setLocation(world.getTracker(i).getX() * fieldDimension.width, world.getTracker(i).getY() * fieldDimension.height);
+			Rectangle tracker = this.trackers.get(i);
+			int x = snapshot.getTrackerX(i) * fieldDimension.width;
+			int y = snapshot.getTrackerY(i) * fieldDimension.height;
+			if (tracker.x == x && tracker.y == y && tracker.width == fieldDimension.width && tracker.height == fieldDimension.height)
+				continue;
+			changed(tracker);
+			tracker.setSize(fieldDimension.width, fieldDimension.height);
+			tracker.setLocation(x, y);
+			changed(tracker);
+		}
+
+		// A tile changed: the terrain is drawn again
+		if (this.modifications != snapshot.getModifications()) {
+			this.modifications = snapshot.getModifications();
+			this.dirty.setBounds(bg);
+			repaint();
 		}
-		repaint();
+	}
+
+	/** Remember that the cell of a sprite has to be drawn again */
+	private void changed(Rectangle sprite) {
+		if (sprite.isEmpty())
+			return;
+		int x = sprite.x / this.fieldDimension.width;
+		int y = sprite.y / this.fieldDimension.height;
+		if (x < 0 || x >= this.WIDTH || y < 0 || y >= this.HEIGHT)
+			return;
+		if (this.dirtyCount >= MAX_DIRTY_CELLS) {
+			// No paint for a long time (e.g. the window is minimised): draw everything next time
+			this.frameModifications = -1;
+			this.dirty.setBounds(bg);
+			this.dirtyCount = 0;
+			repaint();
+			return;
+		}
+		// Not needed while the whole frame is drawn again anyway
+		if (this.frameModifications != -1) {
+			if (this.dirtyCount == this.dirtyCells.length)
+				this.dirtyCells = Arrays.copyOf(this.dirtyCells, Math.min(2 * this.dirtyCount, MAX_DIRTY_CELLS));
+			this.dirtyCells[this.dirtyCount++] = x + y * this.WIDTH;
+		}
+
+		Rectangle cell = new Rectangle(x * this.fieldDimension.width, y * this.fieldDimension.height, this.fieldDimension.width, this.fieldDimension.height);
+		if (this.dirty.isEmpty())
+			this.dirty.setBounds(cell);
+		else
+			this.dirty.add(cell);
+		repaint(cell);
 	}
 }
@@ -0,0 +1,69 @@
+package view;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+/**
+ * The textures of a tileset, sliced and scaled to the size of a field once
+ * and drawn onto the black background of the map. Drawing a tile is then a
+ * plain copy of an opaque image instead of cutting it out of the tileset,
+ * scaling and blending it on every repaint.
+ */
+public class TextureAtlas {
+
+	/** Size of a texture in the tileset */
+	private static final int TEXTURE_SIZE = 320;
+	/** Textures per row of the tileset (tile type n is the n-th texture) */
+	private static final int TEXTURES_PER_ROW = 5;
+
+	/** Texture of each tile type, null if the tileset has none */
+	private final BufferedImage[] textures;
+	private final Dimension fieldDimension;
+
+	/**
+	 * @param tileset the textures, TEXTURE_SIZE pixels each.
+	 * @param fieldDimension size the textures are scaled to.
+	 * @param configuration configuration of the screen the textures are drawn
+	 * on, or null if they are not drawn on a screen.
+	 */
+	public TextureAtlas(BufferedImage tileset, Dimension fieldDimension, GraphicsConfiguration configuration) {
+		this.fieldDimension = new Dimension(fieldDimension);
+		this.textures = new BufferedImage[256];
+		for (int type = 0; type < this.textures.length; type++) {
+			int x = (type * TEXTURE_SIZE) % (TEXTURES_PER_ROW * TEXTURE_SIZE);
+			int y = (type / TEXTURES_PER_ROW) * TEXTURE_SIZE;
+			if (x + TEXTURE_SIZE > tileset.getWidth() || y + TEXTURE_SIZE > tileset.getHeight())
+				continue;
+			BufferedImage texture = createImage(configuration, fieldDimension.width, fieldDimension.height, Transparency.OPAQUE);
+			Graphics2D g = texture.createGraphics();
+			g.setColor(Color.BLACK);
+			g.fillRect(0, 0, fieldDimension.width, fieldDimension.height);
+			g.drawImage(tileset, 0, 0, fieldDimension.width, fieldDimension.height, x, y, x + TEXTURE_SIZE, y + TEXTURE_SIZE, null);
+			g.dispose();
+			this.textures[type] = texture;
+		}
+	}
+
+	public Dimension getFieldDimension() {
+		return new Dimension(this.fieldDimension);
+	}
+
+	/** The texture of a tile type scaled to the field size (opaque), or null if there is none */
+	public BufferedImage getTexture(int type) {
+		return this.textures[type];
+	}
+
+	/**
+	 * Creates an image in the format of the screen (which Java2D can keep in
+	 * video memory), or a plain image if there is no screen.
+	 */
+	static BufferedImage createImage(GraphicsConfiguration configuration, int width, int height, int transparency) {
+		if (configuration == null)
+			return new BufferedImage(width, height, transparency == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+		return configuration.createCompatibleImage(width, height, transparency);
+	}
+}